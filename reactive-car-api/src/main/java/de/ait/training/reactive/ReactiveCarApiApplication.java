@@ -0,0 +1,22 @@
+package de.ait.training.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Реактивный вариант чтения /api/cars: WebFlux на Netty и R2DBC вместо Tomcat и JDBC.
+ * Читает ту же таблицу cars, что и основное приложение, и повторяет контракт GET-запросов
+ * RestApiCarController. Потоки не ждут базу: на тысячи одновременных запросов хватает
+ * нескольких потоков event loop, а длинный список идет клиенту с той скоростью, с какой он читает
+ */
+@Slf4j
+@SpringBootApplication
+public class ReactiveCarApiApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveCarApiApplication.class, args);
+        log.info("Reactive car API started");
+    }
+
+}
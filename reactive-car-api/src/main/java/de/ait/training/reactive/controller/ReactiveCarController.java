@@ -0,0 +1,240 @@
+package de.ait.training.reactive.controller;
+
+import de.ait.training.reactive.model.Car;
+import de.ait.training.reactive.repository.ReactiveCarRepository;
+import de.ait.training.reactive.util.CarCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GET-запросы /api/cars с тем же контрактом, что у RestApiCarController:
+ * те же пути, статусы, ETag и курсоры. Изменения машин остаются в основном приложении
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/cars")
+public class ReactiveCarController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final ReactiveCarRepository carRepository;
+    private final int maxPageLimit;
+    private final int streamBatchSize;
+
+    public ReactiveCarController(ReactiveCarRepository carRepository,
+                                 @Value("${app.cars.page.max-limit:1000}") int maxPageLimit,
+                                 @Value("${app.cars.stream.batch-size:500}") int streamBatchSize) {
+        this.carRepository = carRepository;
+        this.maxPageLimit = maxPageLimit;
+        this.streamBatchSize = streamBatchSize;
+    }
+
+    /**
+     * GET /api/cars
+     * Получаем все автомобили, отсортированные по id: JSON-массив или NDJSON
+     * (Accept: application/x-ndjson, по машине в строке).
+     * Порции по id читаются из базы по мере того, как клиент принимает ответ (backpressure),
+     * поэтому медленный клиент не заставляет держать всю таблицу в памяти
+     *
+     * @param cursor курсор, после которого начинать выдачу (необязательный)
+     * @return поток всех автомобилей
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    ResponseEntity<Flux<Car>> getCars(@RequestParam(required = false) String cursor) {
+        long afterId;
+        try {
+            afterId = (cursor == null) ? 0L : CarCursor.decode(cursor);
+        } catch (IllegalArgumentException exception) {
+            log.error("Code 400 - {}", exception.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(carsAfter(afterId));
+    }
+
+    /**
+     * GET /api/cars (Accept: text/event-stream)
+     * Те же автомобили как Server-Sent Events: событие car с курсором в id,
+     * в конце - событие end без данных. При обрыве EventSource переподключается
+     * с заголовком Last-Event-ID, и выдача продолжается со следующей машины
+     *
+     * @param cursor      курсор, после которого начинать выдачу (необязательный)
+     * @param lastEventId id последнего полученного события, важнее cursor
+     * @return поток событий
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    ResponseEntity<Flux<ServerSentEvent<Car>>> streamCars(
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        String resumeFrom = (lastEventId != null) ? lastEventId : cursor;
+        long afterId;
+        try {
+            afterId = (resumeFrom == null) ? 0L : CarCursor.decode(resumeFrom);
+        } catch (IllegalArgumentException exception) {
+            log.error("Code 400 - {}", exception.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        Flux<ServerSentEvent<Car>> events = carsAfter(afterId)
+                .map(car -> ServerSentEvent.builder(car)
+                        .id(CarCursor.encode(car.id()))
+                        .event("car")
+                        .build())
+                .concatWithValues(ServerSentEvent.<Car>builder().event("end").build());
+        return ResponseEntity.ok(events);
+    }
+
+    /**
+     * GET /api/cars?limit=50&cursor=...
+     * Получаем одну страницу автомобилей по id (keyset-пагинация),
+     * курсор следующей страницы - в заголовке X-Next-Cursor
+     *
+     * @param cursor курсор, полученный с предыдущей страницей (необязательный)
+     * @param limit  размер страницы, от 1 до app.cars.page.max-limit
+     * @return страница автомобилей
+     */
+    @GetMapping(params = "limit")
+    Mono<ResponseEntity<List<Car>>> getCarsPage(@RequestParam(required = false) String cursor,
+                                                @RequestParam int limit) {
+        if (limit < 1 || limit > maxPageLimit) {
+            log.error("Code 400 - Page limit must be between 1 and {}, got {}", maxPageLimit, limit);
+            return Mono.just(new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST));
+        }
+
+        long afterId;
+        try {
+            afterId = (cursor == null) ? 0L : CarCursor.decode(cursor);
+        } catch (IllegalArgumentException exception) {
+            log.error("Code 400 - {}", exception.getMessage());
+            return Mono.just(new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST));
+        }
+
+        // Лишняя строка показывает, есть ли следующая страница
+        return carRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit + 1))
+                .collectList()
+                .map(cars -> {
+                    boolean hasNext = cars.size() > limit;
+                    List<Car> page = hasNext ? cars.subList(0, limit) : cars;
+                    log.info("Code 200 - {} Cars found after id {}", page.size(), afterId);
+
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (hasNext) {
+                        response.header(NEXT_CURSOR_HEADER, CarCursor.encode(page.get(page.size() - 1).id()));
+                    }
+                    return response.body(page);
+                });
+    }
+
+    /**
+     * GET /api/cars/{id}
+     * Получаем автомобиль по ID
+     *
+     * @param id ID машины
+     * @return найденный автомобиль, в ETag - его версия (304, если совпала с If-None-Match)
+     */
+    @GetMapping("/{id:\\d+}")
+    Mono<ResponseEntity<Car>> getCarById(@PathVariable long id, ServerWebExchange exchange) {
+        return carRepository.findById(id)
+                .map(car -> {
+                    String etag = "\"" + car.version() + "\"";
+                    if (exchange.checkNotModified(etag)) {
+                        log.info("Code 304 - Car {} not modified", id);
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).<Car>build();
+                    }
+                    log.info("Code 200 - Car found for id {}", id);
+                    return ResponseEntity.ok().eTag(etag).body(car);
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Code 404 - Car not found for id {}", id);
+                    return ResponseEntity.notFound().build();
+                }));
+    }
+
+    /**
+     * GET /api/cars/color/{color}
+     * Получаем список автомобилей с заданным цветом (404, если ничего не найдено)
+     */
+    @GetMapping("/color/{color}")
+    Mono<ResponseEntity<List<Car>>> getCarsByColor(@PathVariable String color) {
+        return carRepository.findCarByColorIgnoreCase(color)
+                .collectList()
+                .map(cars -> found(cars, "for color " + color));
+    }
+
+    /**
+     * GET /api/cars/price/between/{min}/{max}
+     * Получаем автомобили, у которых price находится включительно между min и max
+     */
+    @GetMapping("/price/between/{min}/{max}")
+    Mono<ResponseEntity<List<Car>>> getCarsByPriceBetween(@PathVariable Double min, @PathVariable Double max) {
+        if (min > max) {
+            log.error("Code 400 - The max ({}) value must be greater than the min value ({})",
+                    max, min);
+            return Mono.just(new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST));
+        }
+
+        return carRepository.findCarByPriceBetween(min, max)
+                .collectList()
+                .map(cars -> found(cars, "for the range from " + min + " to " + max));
+    }
+
+    /**
+     * GET /api/cars/price/under/{max}
+     * Получаем автомобили, у которых цена меньше, чем заданная, или равна ей
+     */
+    @GetMapping("/price/under/{max}")
+    Mono<ResponseEntity<List<Car>>> getCarsByPriceUnder(@PathVariable Double max) {
+        return carRepository.findCarByPriceLessThanEqual(max)
+                .collectList()
+                .map(cars -> found(cars, "with a price less than or equal to " + max));
+    }
+
+    /**
+     * GET /api/cars/price/over/{min}
+     * Получаем автомобили, у которых цена больше, чем заданная, или равна ей
+     */
+    @GetMapping("/price/over/{min}")
+    Mono<ResponseEntity<List<Car>>> getCarsByPriceOver(@PathVariable Double min) {
+        return carRepository.findCarByPriceGreaterThanEqual(min)
+                .collectList()
+                .map(cars -> found(cars, "with a price greater than or equal to " + min));
+    }
+
+    // Как CarService.forEachCar: каждая порция - отдельный запрос, и соединение возвращается в пул
+    // между порциями. Иначе длинные ответы медленным клиентам занимают весь пул R2DBC.
+    // Следующая порция запрашивается, только когда подписчик дочитал предыдущую
+    private Flux<Car> carsAfter(long afterId) {
+        return carRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(streamBatchSize))
+                .collectList()
+                .flatMapMany(batch -> (batch.size() < streamBatchSize)
+                        ? Flux.fromIterable(batch)
+                        : Flux.fromIterable(batch).concatWith(Flux.defer(() -> carsAfter(batch.getLast().id()))));
+    }
+
+    // Как в RestApiCarController: пустой результат фильтра - 404 с пустым массивом
+    private static ResponseEntity<List<Car>> found(List<Car> cars, String criteria) {
+        if (cars.isEmpty()) {
+            log.warn("Code 404 - No cars found {}", criteria);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
+        }
+        log.info("Code 200 - {} Cars found {}", cars.size(), criteria);
+        return new ResponseEntity<>(cars, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,23 @@
+package de.ait.training.reactive.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Машина из таблицы cars только для чтения. В JSON совпадает с Car основного приложения
+ */
+@Table("cars")
+public record Car(
+        @Id Long id,
+        String color,
+        String model,
+        double price,
+        int year,
+        @Column("engine_type") String engineType,
+        @Column("image_url") String imageUrl,
+        @Column("thumbnail_url") String thumbnailUrl,
+        @Column("medium_url") String mediumUrl,
+        Long version
+) {
+}
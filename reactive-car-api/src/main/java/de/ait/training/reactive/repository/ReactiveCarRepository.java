@@ -0,0 +1,24 @@
+package de.ait.training.reactive.repository;
+
+import de.ait.training.reactive.model.Car;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+
+// Те же запросы, что в CarRepository основного приложения
+public interface ReactiveCarRepository extends ReactiveCrudRepository<Car, Long> {
+    // Производный запрос с IgnoreCase генерирует upper(color) = upper(?), а индекс построен по lower(color)
+    @Query("SELECT * FROM cars WHERE lower(color) = lower(:color)")
+    Flux<Car> findCarByColorIgnoreCase(@Param("color") String color);
+
+    Flux<Car> findCarByPriceBetween(Double min, Double max);
+
+    Flux<Car> findCarByPriceLessThanEqual(Double max);
+
+    Flux<Car> findCarByPriceGreaterThanEqual(Double min);
+
+    // Keyset (seek) пагинация: WHERE id > :afterId ORDER BY id LIMIT :limit
+    Flux<Car> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+}
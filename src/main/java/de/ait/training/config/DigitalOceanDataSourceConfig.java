@@ -1,13 +1,13 @@
 package de.ait.training.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
-import javax.sql.DataSource;
-
 @Configuration
 @Profile("do")
 public class DigitalOceanDataSourceConfig {
@@ -29,10 +29,17 @@ public class DigitalOceanDataSourceConfig {
     @Value("${spring.datasource.driver-class-name}")
     private String driverPath;
 
+    /**
+     * Пул HikariCP. Размер, таймауты, поиск утечек и настройки драйвера (data-source-properties)
+     * берутся из spring.datasource.hikari.*, как у пула Spring Boot в остальных профилях.
+     * Метрики пула Spring Boot вешает на любой HikariDataSource: /actuator/metrics/hikaricp.*
+     */
     @Bean
-    public DataSource dataSource() {
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource() {
         return DataSourceBuilder
                 .create()
+                .type(HikariDataSource.class)
                 .driverClassName(driverPath)
                 .url("jdbc:postgresql://" + host + ":" + port + "/" + name)
                 .username(username)
@@ -0,0 +1,386 @@
+package de.ait.training.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжатие gzip ответов /api/** больше порога (server.compression.min-response-size).
+ * Tomcat (server.compression) не сжимает ответы с сильным ETag - у сжатого ответа другие байты,
+ * и по RFC 9110 у него должен быть свой сильный ETag. Поэтому API сжимается здесь, и, как mod_deflate в Apache,
+ * к ETag сжатого ответа добавляется суффикс -gzip ("cars-5" -> "cars-5-gzip"), а из If-None-Match и If-Match
+ * запроса суффикс убирается до контроллера: контроллеры сравнивают ETag без учета сжатия.
+ * Первые байты ответа копятся в буфере: если ответ закончился раньше порога, он уходит как есть
+ * с Content-Length, иначе дальше сжимается потоком (подходит и для потоковых ответов).
+ * Vary: Accept-Encoding ставится на каждый сжимаемый GET-ответ 200, в том числе клиенту без gzip:
+ * иначе кэш по дороге отдал бы несжатую копию клиенту с gzip и наоборот. И на 304: по RFC 9110
+ * в нем тот же Vary, что был бы в ответе 200 (тела и Content-Type у 304 нет, поэтому ставится всегда).
+ * Brotli не поддерживается: в JDK и Tomcat его нет
+ */
+@Component
+public class GzipResponseFilter extends OncePerRequestFilter {
+    private static final String GZIP = "gzip";
+    private static final String ETAG_SUFFIX = "-gzip\"";
+
+    private final int minResponseSize;
+    private final List<MediaType> mimeTypes;
+
+    public GzipResponseFilter(@Value("${server.compression.min-response-size:2KB}") DataSize minResponseSize,
+                              @Value("${server.compression.mime-types:application/json}") String[] mimeTypes) {
+        this.minResponseSize = (int) minResponseSize.toBytes();
+        this.mimeTypes = new ArrayList<>();
+        for (String mimeType : mimeTypes) {
+            this.mimeTypes.add(MediaType.parseMediaType(mimeType.trim()));
+        }
+    }
+
+    // "gzip;q=0" означает, что gzip клиент не принимает
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    // Потоковый ответ дописывается после выхода из первого прохода фильтра, конец gzip пишется в async dispatch
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            chain.doFilter(request, response);
+            GzipResponse gzipResponse = WebUtils.getNativeResponse(response, GzipResponse.class);
+            if (gzipResponse != null && !isAsyncStarted(request)) {
+                gzipResponse.finish();
+            }
+            return;
+        }
+
+        EtagRequest etagRequest = new EtagRequest(request);
+        if (!"GET".equals(request.getMethod())) {
+            chain.doFilter(etagRequest, response);
+            return;
+        }
+
+        // Без gzip ответ тоже идет через обертку: Vary нужно поставить до отправки заголовков
+        GzipResponse gzipResponse = new GzipResponse(response, etagRequest,
+                acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING)));
+        // При исключении ответ не дописываем: оборванный gzip не должен распаковываться как целый
+        chain.doFilter(etagRequest, gzipResponse);
+        if (!isAsyncStarted(request)) {
+            gzipResponse.finish();
+        }
+    }
+
+    // Сжать можно только ответ 200 с типом из server.compression.mime-types
+    private boolean isCompressible(HttpServletResponse response) {
+        String contentType = response.getContentType();
+        if (response.getStatus() != HttpStatus.OK.value() || contentType == null) {
+            return false;
+        }
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        for (MediaType mimeType : mimeTypes) {
+            if (mimeType.isCompatibleWith(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Export ставит Vary сам
+    private static void varyByAcceptEncoding(HttpServletResponse response) {
+        if (response.getHeader(HttpHeaders.VARY) == null) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    private static String withSuffix(String etag) {
+        if (etag == null || etag.startsWith("W/") || !etag.endsWith("\"") || etag.endsWith(ETAG_SUFFIX)) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + ETAG_SUFFIX;
+    }
+
+    // Убирает -gzip из ETag в If-None-Match и If-Match: "cars-5-gzip" -> "cars-5"
+    private static final class EtagRequest extends HttpServletRequestWrapper {
+        // Клиент прислал ETag сжатого ответа - в 304 вернем ETag тоже с суффиксом
+        private boolean gzipValidator;
+
+        private EtagRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return isConditional(name) && value != null ? strip(value) : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!isConditional(name) || values == null) {
+                return values;
+            }
+            List<String> stripped = new ArrayList<>();
+            while (values.hasMoreElements()) {
+                stripped.add(strip(values.nextElement()));
+            }
+            return Collections.enumeration(stripped);
+        }
+
+        private static boolean isConditional(String name) {
+            return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name) || HttpHeaders.IF_MATCH.equalsIgnoreCase(name);
+        }
+
+        private String strip(String value) {
+            if (!value.contains(ETAG_SUFFIX)) {
+                return value;
+            }
+            gzipValidator = true;
+            return value.replace(ETAG_SUFFIX, "\"");
+        }
+    }
+
+    /**
+     * Ответ, который до порога копит байты в буфере, а после решает: сжимать (клиент принимает gzip, код 200,
+     * сжимаемый Content-Type, Content-Encoding еще не задан) или писать как есть. Заголовки до этого момента не отправлены,
+     * поэтому Content-Encoding и ETag еще можно поменять. flushBuffer до решения откладывается
+     */
+    private final class GzipResponse extends HttpServletResponseWrapper {
+        private final EtagRequest request;
+        private final boolean gzipAccepted;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        // null, пока решение не принято
+        private OutputStream target;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        private boolean finished;
+
+        private GzipResponse(HttpServletResponse response, EtagRequest request, boolean gzipAccepted) {
+            super(response);
+            this.request = request;
+            this.gzipAccepted = gzipAccepted;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        GzipResponse.this.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        if (target != null) {
+                            target.flush();
+                        }
+                    }
+
+                    // Неблокирующая запись идет через поток контейнера: он знает, когда можно писать дальше
+                    @Override
+                    public boolean isReady() {
+                        return containerStream().isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        containerStream().setWriteListener(listener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        private ServletOutputStream containerStream() {
+            try {
+                return getResponse().getOutputStream();
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        // Длину знаем только после решения: у сжатого ответа она другая
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (target == null) {
+                contentLength = length;
+            } else if (!isGzip()) {
+                super.setContentLengthLong(length);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (target == null) {
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (target == null) {
+                buffer.reset();
+                contentLength = -1;
+            }
+        }
+
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            if (target == null) {
+                if (buffer.size() + length <= minResponseSize) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                decide();
+            }
+            target.write(bytes, offset, length);
+        }
+
+        private void decide() throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            boolean compressible = isCompressible(response);
+            if (compressible) {
+                varyByAcceptEncoding(response);
+            }
+            if (compressible && gzipAccepted && response.getHeader(HttpHeaders.CONTENT_ENCODING) == null) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+                response.setHeader(HttpHeaders.ETAG, withSuffix(response.getHeader(HttpHeaders.ETAG)));
+                target = new GZIPOutputStream(response.getOutputStream(), 8192);
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private boolean isGzip() {
+            return target instanceof GZIPOutputStream;
+        }
+
+        // Дописывает ответ: маленький - из буфера с Content-Length, сжатый - концом gzip
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (writer != null) {
+                writer.flush();
+            }
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (target == null) {
+                if (request.gzipValidator && response.getStatus() == HttpStatus.NOT_MODIFIED.value()) {
+                    response.setHeader(HttpHeaders.ETAG, withSuffix(response.getHeader(HttpHeaders.ETAG)));
+                }
+                if (isCompressible(response) || response.getStatus() == HttpStatus.NOT_MODIFIED.value()) {
+                    varyByAcceptEncoding(response);
+                }
+                if (buffer.size() > 0) {
+                    response.setContentLength(buffer.size());
+                    buffer.writeTo(response.getOutputStream());
+                } else if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                buffer = null;
+                target = response.getOutputStream();
+            } else if (target instanceof GZIPOutputStream gzip) {
+                gzip.finish();
+            }
+            response.flushBuffer();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.ait.training.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Метрики для Prometheus (GET /actuator/prometheus):
+ * api.not.found - ответы 404 эндпоинтов /api/cars и /api/email по шаблону uri
+ * (доля 404 - деление на http.server.requests с тем же uri),
+ * spring.data.repository.results - сколько строк вернул каждый метод репозитория, возвращающий список.
+ * Время запросов (http.server.requests) и методов репозиториев (spring.data.repository.invocations)
+ * Spring Boot пишет сам, гистограммы для них включаются в application.properties
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+    private static final String[] API_PREFIXES = {"/api/cars", "/api/email"};
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public MetricsConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                        Object handler, Exception exception) {
+                if (response.getStatus() != HttpStatus.NOT_FOUND.value()) {
+                    return;
+                }
+                // Шаблон, а не сам путь: /api/cars/{id}, иначе на каждый id свой счетчик
+                Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                if (uri instanceof String pattern && isApi(pattern)) {
+                    Counter.builder("api.not.found")
+                            .description("Responses with status 404 from the cars and email API")
+                            .tag("uri", pattern)
+                            .tag("method", request.getMethod())
+                            .register(meterRegistry.getObject())
+                            .increment();
+                }
+            }
+        });
+    }
+
+    // static: BeanPostProcessor должен создаваться раньше репозиториев
+    @Bean
+    static BeanPostProcessor repositoryResultSizeMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        Supplier<MeterRegistry> registry = SingletonSupplier.of(meterRegistry::getObject);
+        return new BeanPostProcessor() {
+            // Репозиторий создается в afterPropertiesSet фабрики, поэтому до инициализации
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(resultSizeInterceptor(
+                                    registry, information.getRepositoryInterface().getSimpleName()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static MethodInterceptor resultSizeInterceptor(Supplier<MeterRegistry> registry, String repository) {
+        Map<Method, DistributionSummary> summaries = new ConcurrentHashMap<>();
+        return invocation -> {
+            Object result = invocation.proceed();
+            if (result instanceof Collection<?> rows) {
+                summaries.computeIfAbsent(invocation.getMethod(), method -> DistributionSummary
+                                .builder("spring.data.repository.results")
+                                .description("Rows returned by a repository method")
+                                .baseUnit("rows")
+                                .tag("repository", repository)
+                                .tag("method", method.getName())
+                                .publishPercentileHistogram()
+                                .maximumExpectedValue(100_000.0)
+                                .register(registry.get()))
+                        .record(rows.size());
+            }
+            return result;
+        };
+    }
+
+    private static boolean isApi(String uri) {
+        if (uri == null) {
+            return false;
+        }
+        for (String prefix : API_PREFIXES) {
+            if (uri.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
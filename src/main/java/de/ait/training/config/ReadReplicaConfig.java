@@ -0,0 +1,117 @@
+package de.ait.training.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Чтение с реплик, включается свойством app.datasource.replicas.urls.
+ * Бин dataSource (пул Spring Boot или DigitalOceanDataSourceConfig) заменяется на LazyConnectionDataSourceProxy:
+ * соединение берется при первом запросе, когда уже известно, read-only ли транзакция.
+ * Read-only транзакции (@Transactional(readOnly = true), все GET в RestApiCarController) идут
+ * в ReadReplicaDataSource, остальные и Liquibase - в основную базу.
+ * Пулы реплик копируют настройки основного пула (логин, размер, data-source-properties)
+ */
+@Slf4j
+@Configuration
+@ConditionalOnExpression("!'${app.datasource.replicas.urls:}'.isBlank()")
+public class ReadReplicaConfig {
+    private final ReadReplicaRouting readReplicaRouting;
+
+    public ReadReplicaConfig(ReadReplicaRouting readReplicaRouting) {
+        this.readReplicaRouting = readReplicaRouting;
+    }
+
+    // static: BeanPostProcessor должен создаваться раньше остальных бинов
+    @Bean
+    static ReadReplicaRouting readReplicaRouting(Environment environment) {
+        return new ReadReplicaRouting(
+                List.of(StringUtils.commaDelimitedListToStringArray(
+                        environment.getRequiredProperty("app.datasource.replicas.urls"))),
+                environment.getProperty("app.datasource.replicas.lag-query", ""),
+                environment.getProperty("app.datasource.replicas.max-lag", Duration.class, Duration.ofSeconds(10)));
+    }
+
+    // dataSource в параметрах, чтобы реплики были созданы до привязки метрик
+    @Bean
+    MeterBinder readReplicaMetrics(DataSource dataSource) {
+        return registry -> readReplicaRouting.getReplicaDataSource().bindTo(registry);
+    }
+
+    @Scheduled(initialDelayString = "${app.datasource.replicas.check-interval:5s}",
+            fixedDelayString = "${app.datasource.replicas.check-interval:5s}")
+    public void checkReplicas() {
+        ReadReplicaDataSource replicaDataSource = readReplicaRouting.getReplicaDataSource();
+        if (replicaDataSource != null) {
+            replicaDataSource.checkReplicas();
+        }
+    }
+
+    static class ReadReplicaRouting implements BeanPostProcessor, DisposableBean {
+        private final List<String> urls;
+        private final String lagQuery;
+        private final Duration maxLag;
+        private volatile HikariDataSource primary;
+        private volatile ReadReplicaDataSource replicaDataSource;
+
+        ReadReplicaRouting(List<String> urls, String lagQuery, Duration maxLag) {
+            this.urls = urls.stream().map(String::trim).filter(url -> !url.isEmpty()).toList();
+            this.lagQuery = lagQuery;
+            this.maxLag = maxLag;
+        }
+
+        ReadReplicaDataSource getReplicaDataSource() {
+            return replicaDataSource;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!"dataSource".equals(beanName) || !(bean instanceof HikariDataSource primary)) {
+                return bean;
+            }
+
+            String poolName = Objects.requireNonNullElse(primary.getPoolName(), "cars");
+            Map<String, DataSource> replicas = new LinkedHashMap<>();
+            for (String url : urls) {
+                HikariDataSource replica = new HikariDataSource();
+                primary.copyStateTo(replica);
+                replica.setJdbcUrl(url);
+                replica.setPoolName(poolName + "-replica-" + (replicas.size() + 1));
+                replica.setReadOnly(true);
+                replicas.put(replica.getPoolName(), replica);
+            }
+            this.primary = primary;
+            this.replicaDataSource = new ReadReplicaDataSource(primary, replicas, lagQuery, maxLag);
+
+            LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+            routing.setReadOnlyDataSource(replicaDataSource);
+            log.info("Read-only transactions routed to replicas {}", replicas.keySet());
+            return routing;
+        }
+
+        // У обертки нет close(), поэтому Spring не закроет основной пул сам
+        @Override
+        public void destroy() {
+            if (replicaDataSource != null) {
+                replicaDataSource.close();
+                primary.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package de.ait.training.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Источник соединений для read-only транзакций: реплики по кругу.
+ * Реплика, которая не отдала соединение или отстает от основной базы больше maxLag,
+ * пропускается до следующей успешной проверки checkReplicas(). Если подходящих реплик нет,
+ * соединение берется из основной базы - чтение медленнее, но не падает
+ */
+@Slf4j
+public class ReadReplicaDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final String lagQuery;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param replicas реплики по имени (имя - тег в метриках и логах)
+     * @param lagQuery запрос, который возвращает отставание реплики в секундах (null - 0),
+     *                 пустой - отставание не проверяется
+     */
+    public ReadReplicaDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                 String lagQuery, Duration maxLag) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one read replica expected");
+        }
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection route(ConnectionFactory factory) throws SQLException {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.available) {
+                continue;
+            }
+            try {
+                return factory.get(replica.dataSource);
+            } catch (SQLException | RuntimeException exception) {
+                // Hikari бросает PoolInitializationException (RuntimeException), если база недоступна при старте пула
+                markUnavailable(replica, exception);
+            }
+        }
+        fallbacks.increment();
+        return factory.get(primary);
+    }
+
+    /**
+     * Проверяет каждую реплику: соединение и отставание. Вызывается по расписанию,
+     * так пропущенные реплики возвращаются в работу
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.lagSeconds = lagSeconds(connection);
+            } catch (SQLException | RuntimeException exception) {
+                markUnavailable(replica, exception);
+                continue;
+            }
+
+            boolean fresh = replica.lagSeconds <= maxLagSeconds;
+            if (fresh && !replica.available) {
+                log.info("Read replica {} is back, lag {} s", replica.name, replica.lagSeconds);
+            } else if (!fresh && replica.available) {
+                log.warn("Read replica {} lags {} s behind the primary, reads go elsewhere",
+                        replica.name, replica.lagSeconds);
+            }
+            replica.available = fresh;
+        }
+    }
+
+    private double lagSeconds(Connection connection) throws SQLException {
+        if (lagQuery == null || lagQuery.isBlank()) {
+            return 0;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            return resultSet.next() ? resultSet.getDouble(1) : 0;
+        }
+    }
+
+    private void markUnavailable(Replica replica, Exception exception) {
+        if (replica.available) {
+            log.warn("Read replica {} is unavailable, reads go elsewhere: {}", replica.name, exception.getMessage());
+        }
+        replica.available = false;
+    }
+
+    /**
+     * Метрики: db.replica.available (1/0) и db.replica.lag с тегом replica,
+     * db.replica.fallbacks - сколько раз чтение ушло в основную базу. Пулы реплик - в hikaricp.*
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : replicas) {
+            Gauge.builder("db.replica.available", replica, r -> r.available ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(registry);
+            Gauge.builder("db.replica.lag", replica, r -> r.lagSeconds)
+                    .tag("replica", replica.name)
+                    .baseUnit("seconds")
+                    .register(registry);
+            if (replica.dataSource instanceof HikariDataSource hikari && hikari.getMetricsTrackerFactory() == null) {
+                try {
+                    hikari.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+                } catch (IllegalStateException exception) {
+                    log.warn("Pool metrics for read replica {} skipped, the pool is already started", replica.name);
+                }
+            }
+        }
+        FunctionCounter.builder("db.replica.fallbacks", fallbacks, LongAdder::sum)
+                .description("Read-only connections taken from the primary because no replica was available")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception exception) {
+                    log.warn("Read replica {} pool not closed", replica.name, exception);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionFactory {
+        Connection get(DataSource dataSource) throws SQLException;
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean available = true;
+        private volatile double lagSeconds;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
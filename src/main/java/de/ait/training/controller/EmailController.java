@@ -1,23 +1,44 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignStatus;
+import de.ait.training.service.CampaignService;
 import de.ait.training.service.EmailService;
 import jakarta.validation.constraints.Email;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api/email")
 @Slf4j
-@RequiredArgsConstructor
 public class EmailController {
+    // Рассылать можно только шаблоны писем, без выхода из templates/email
+    private static final Pattern EMAIL_TEMPLATE = Pattern.compile("email/[\\w-]+");
+
     private final EmailService emailService;
+    private final CampaignService campaignService;
+    private final boolean asyncDispatch;
+
+    public EmailController(EmailService emailService, CampaignService campaignService,
+                           @Value("${app.mail.dispatch.async:false}") boolean asyncDispatch) {
+        this.emailService = emailService;
+        this.campaignService = campaignService;
+        this.asyncDispatch = asyncDispatch;
+    }
 
     @PostMapping("/service")
     public ResponseEntity<String>  sendEmailToService(@RequestParam String emailTo) {
@@ -26,8 +47,68 @@ public class EmailController {
         "userName", "Client",
         "promoCode", "AIT-223344");
 
-        emailService.sendTemplateEmail(emailTo, "Car service time", "email/CarService", map);
-        return ResponseEntity.ok("Email sent to " + emailTo);
+        if (!asyncDispatch) {
+            emailService.sendTemplateEmail(emailTo, "Car service time", "email/CarService", map);
+            return ResponseEntity.ok("Email sent to " + emailTo);
+        }
+
+        try {
+            emailService.queueTemplateEmail(emailTo, "Car service time", "email/CarService", map);
+        } catch (RejectedExecutionException exception) {
+            log.warn("Code 503 - {}", exception.getMessage());
+            return new ResponseEntity<>("Email queue is full, try again later", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return ResponseEntity.accepted().body("Email queued for " + emailTo);
+    }
+
+    /**
+     * POST /api/email/campaigns
+     * Запускаем рассылку одного шаблона многим получателям (список или сохраненные контакты)
+     * Рассылка идет в фоне, ход выполнения доступен по ссылке из заголовка Location
+     *
+     * @param request шаблон, тема, общие переменные и получатели
+     * @return начальное состояние рассылки (503, если очередь рассылок заполнена)
+     */
+    @PostMapping("/campaigns")
+    public ResponseEntity<CampaignStatus> startCampaign(@RequestBody CampaignRequest request) {
+        if (request.subject() == null || request.template() == null
+                || !EMAIL_TEMPLATE.matcher(request.template()).matches()) {
+            log.error("Code 400 - Campaign subject and template (email/...) are required");
+            return ResponseEntity.badRequest().build();
+        }
+        if ((request.recipients() == null) == (request.contacts() == null)) {
+            log.error("Code 400 - Campaign needs exactly one of recipients or contacts");
+            return ResponseEntity.badRequest().build();
+        }
+
+        CampaignStatus status;
+        try {
+            status = campaignService.startCampaign(request);
+        } catch (RejectedExecutionException exception) {
+            log.warn("Code 503 - {}", exception.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        log.info("Code 202 - Campaign {} accepted", status.id());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/email/campaigns/" + status.id()))
+                .body(status);
+    }
+
+    /**
+     * GET /api/email/campaigns/{id}
+     * Получаем состояние рассылки
+     *
+     * @param id id рассылки
+     * @return состояние рассылки: сколько писем отправлено и сколько с ошибкой
+     */
+    @GetMapping("/campaigns/{id}")
+    public ResponseEntity<CampaignStatus> getCampaign(@PathVariable String id) {
+        return campaignService.getCampaign(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> {
+                    log.warn("Code 404 - Campaign {} not found", id);
+                    return ResponseEntity.notFound().build();
+                });
     }
 
 }
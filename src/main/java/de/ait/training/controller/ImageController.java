@@ -0,0 +1,127 @@
+package de.ait.training.controller;
+
+import de.ait.training.service.ImageStorage;
+import de.ait.training.service.ImageStorage.StoredImage;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+
+/**
+ * Отдает загруженные картинки машин по ссылкам из imageUrl, thumbnailUrl и mediumUrl.
+ * Под одним именем (хэш содержимого или UUID) содержимое никогда не меняется, поэтому картинки кэшируются
+ * клиентом на год без перепроверки. Поддерживаются ETag (SHA-256 содержимого),
+ * условные запросы (304) и Range (206). Файл целиком отправляется через sendfile,
+ * если контейнер его поддерживает (Tomcat NIO), без копирования через память приложения
+ */
+@RestController
+@Slf4j
+public class ImageController {
+    // Имена, которые выдает ImageStorage: <sha256>.<ext>, копии <sha256>-<вариант>.<ext>,
+    // и старые загрузки <uuid>-<безопасное имя файла>
+    private static final String IMAGE_NAME = "{fileName:(?:[0-9a-f]{64}(?:-[a-z]+)?\\.[a-z]+"
+            + "|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}-[\\w.-]+)}";
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365))
+            .cachePublic()
+            .immutable();
+
+    // Атрибуты запроса Tomcat для sendfile (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ImageStorage imageStorage;
+
+    public ImageController(ImageStorage imageStorage) {
+        this.imageStorage = imageStorage;
+    }
+
+    /**
+     * GET /{fileName}
+     * Получаем картинку машины
+     *
+     * @param fileName имя файла из ссылки на картинку
+     * @return картинка целиком (200), ее часть по заголовку Range (206),
+     * 304, если у клиента актуальная копия, 404, если файла нет
+     */
+    @GetMapping("/" + IMAGE_NAME)
+    public ResponseEntity<Resource> getImage(@PathVariable String fileName,
+                                             HttpServletRequest request,
+                                             HttpServletResponse response) throws IOException {
+        StoredImage image = imageStorage.find(fileName).orElse(null);
+        if (image == null) {
+            log.warn("Code 404 - Image {} not found", fileName);
+            return ResponseEntity.notFound().build();
+        }
+
+        String etag = "\"" + image.sha256() + "\"";
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(etag, image.lastModified())) {
+            // 304 для If-None-Match / If-Modified-Since или 412 для If-Match, статус уже выставлен
+            return ResponseEntity.status(response.getStatus()).eTag(etag).cacheControl(IMMUTABLE).build();
+        }
+
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                .eTag(etag)
+                .lastModified(image.lastModified())
+                .cacheControl(IMMUTABLE)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (request.getHeader(HttpHeaders.RANGE) != null && ifRangeMatches(request, etag, image)) {
+            // Для тела типа Resource Spring сам отдает 206 с нужными частями (или 416)
+            return ok.body(new FileSystemResource(image.path()));
+        }
+
+        ok.contentLength(image.size());
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return ok.build();
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Тело не пишем: после ответа Tomcat отправит файл сам через sendfile
+            request.setAttribute(SENDFILE_FILENAME, image.path().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, image.size());
+            return ok.build();
+        }
+
+        // InputStreamResource, чтобы при несовпавшем If-Range Spring не применил Range
+        return ok.body(new InputStreamResource(Files.newInputStream(image.path())));
+    }
+
+    // If-Range: часть файла отдаем, только если у клиента та же версия, иначе файл целиком
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, StoredImage image) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Слабый ETag для If-Range не подходит (RFC 9110), equals с ним всегда false
+            return ifRange.equals(etag);
+        }
+
+        try {
+            long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return image.lastModified() / 1000 <= ifRangeDate / 1000;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+}
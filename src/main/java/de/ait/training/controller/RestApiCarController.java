@@ -1,13 +1,32 @@
 package de.ait.training.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.config.GzipResponseFilter;
+import de.ait.training.dto.CarBatchResult;
+import de.ait.training.dto.CarImportResult;
+import de.ait.training.dto.CarPage;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarView;
 import de.ait.training.model.Car;
-import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarUpsertRepository.Upserted;
+import de.ait.training.service.CarBatchService;
+import de.ait.training.service.CarExportService;
+import de.ait.training.service.CarImportService;
 import de.ait.training.service.CarService;
+import de.ait.training.service.CarTableVersion;
+import de.ait.training.util.CarCursor;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,46 +34,383 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 @Tag(name = "Cars", description = "Operation on cars")
 @Slf4j
 @RequestMapping("/api/cars")
 @RestController
 public class RestApiCarController {
-    private final CarRepository carRepository;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final Set<String> SEARCH_SORT_FIELDS = Set.of("id", "price", "year", "model");
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final Pattern VERSION_ETAG = Pattern.compile("\"(\\d+)\"");
+    private static final int MAX_TEXT_QUERY_LENGTH = 100;
+
     private final CarService carService;
+    private final CarBatchService carBatchService;
+    private final CarImportService carImportService;
+    private final CarExportService carExportService;
+    private final CarTableVersion carTableVersion;
+    private final ObjectMapper objectMapper;
+    private final int maxPageLimit;
 
-    public RestApiCarController(CarRepository carRepository, CarService carService) {
-        this.carRepository = carRepository;
+    public RestApiCarController(CarService carService, CarBatchService carBatchService,
+                                CarImportService carImportService, CarExportService carExportService,
+                                CarTableVersion carTableVersion, ObjectMapper objectMapper,
+                                @Value("${app.cars.page.max-limit:1000}") int maxPageLimit) {
         this.carService = carService;
+        this.carBatchService = carBatchService;
+        this.carImportService = carImportService;
+        this.carExportService = carExportService;
+        this.carTableVersion = carTableVersion;
+        this.objectMapper = objectMapper;
+        this.maxPageLimit = maxPageLimit;
     }
 
     /**
      * GET /api/cars
      * Получаем список всех автомобилей
      * (или пустой список, если ничего не найдено)
+     * Ответ пишется в поток порциями по id (keyset), поэтому память не растет
+     * вместе с размером таблицы
      *
-     * @return список всех автомобилей
+     * @param cursor курсор, после которого начинать выдачу (необязательный)
+     * @return JSON-массив всех автомобилей, отсортированных по id,
+     * в ETag - версия таблицы (304 без запроса к машинам, если совпала с If-None-Match)
      */
     // GET --> api/cars
     @Operation(
             summary = "Get cars",
-            description = "Returns a list of all cars",
+            description = "Returns a streamed list of all cars ordered by id",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "Successful")
+                    @ApiResponse(responseCode = "200", description = "Successful"),
+                    @ApiResponse(responseCode = "400", description = "Invalid cursor")
             }
     )
     @GetMapping
-    Iterable<Car> getCars() {
-        return carRepository.findAll();
+    ResponseEntity<StreamingResponseBody> getCars(@RequestParam(required = false) String cursor,
+                                                  WebRequest request) {
+        long afterId;
+        try {
+            afterId = (cursor == null) ? 0L : CarCursor.decode(cursor);
+        } catch (IllegalArgumentException exception) {
+            log.error("Code 400 - {}", exception.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars after id {} not modified", afterId);
+            return notModified();
+        }
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // Статус 200 уже отправлен, поэтому при ошибке на середине ответ
+                // должен остаться заведомо битым JSON, а не "закрытым" неполным массивом
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                generator.writeStartArray();
+                carService.forEachCar(afterId, car -> {
+                    try {
+                        generator.writePOJO(car);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        // ETag уже записал checkNotModified: тело потоковое, и заголовки ResponseEntity добавились бы вторым ETag
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * GET /api/cars/export?format={csv|ndjson}
+     * Выгружаем все машины файлом для аналитики. Строки идут потоком из курсора базы,
+     * поэтому выгрузка работает на таблице любого размера. Если клиент принимает gzip
+     * (Accept-Encoding), ответ сжимается
+     *
+     * @param format csv (по умолчанию, колонки как у /api/cars/import) или ndjson
+     * @return файл выгрузки
+     */
+    @Operation(
+            summary = "Export cars",
+            description = "Streams all cars ordered by id as CSV or NDJSON, gzip-compressed if the client accepts it",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Successful"),
+                    @ApiResponse(responseCode = "400", description = "Unknown format")
+            }
+    )
+    @GetMapping("/export")
+    ResponseEntity<StreamingResponseBody> exportCars(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean csv = format.equalsIgnoreCase("csv");
+        if (!csv && !format.equalsIgnoreCase("ndjson")) {
+            log.error("Code 400 - Unknown export format {}", format);
+            return ResponseEntity.badRequest().build();
+        }
+
+        boolean gzip = GzipResponseFilter.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+            if (csv) {
+                carExportService.exportCsv(target);
+            } else {
+                carExportService.exportNdjson(target);
+            }
+            // Конец gzip пишем только при успехе: оборванная выгрузка не должна распаковываться как целая
+            if (target instanceof GZIPOutputStream gzipOut) {
+                gzipOut.finish();
+            }
+        };
+
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("cars." + format.toLowerCase(Locale.ROOT))
+                        .build()
+                        .toString())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return ok.body(body);
+    }
+
+    /**
+     * GET /api/cars?limit={limit}&cursor={cursor}
+     * Получаем одну страницу автомобилей (keyset-пагинация по id)
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor,
+     * на последней странице заголовка нет
+     *
+     * @param cursor курсор из предыдущего ответа (для первой страницы не передается)
+     * @param limit  размер страницы
+     * @return страница автомобилей, в ETag - версия таблицы (304, если совпала с If-None-Match)
+     */
+    @Operation(
+            summary = "Get page of cars",
+            description = "Returns one keyset page of cars, next page cursor is sent in the X-Next-Cursor header",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Successful"),
+                    @ApiResponse(responseCode = "400", description = "Bad request")
+            }
+    )
+    @GetMapping(params = "limit")
+    ResponseEntity<List<CarView>> getCarsPage(@RequestParam(required = false) String cursor,
+                                          @RequestParam int limit, WebRequest request) {
+        if (limit < 1 || limit > maxPageLimit) {
+            log.error("Code 400 - Page limit must be between 1 and {}, got {}", maxPageLimit, limit);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+
+        long afterId;
+        try {
+            afterId = (cursor == null) ? 0L : CarCursor.decode(cursor);
+        } catch (IllegalArgumentException exception) {
+            log.error("Code 400 - {}", exception.getMessage());
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars page after id {} not modified", afterId);
+            return notModified();
+        }
+
+        CarPage page = carService.getCarsPage(afterId, limit);
+        log.info("Code 200 - {} Cars found after id {}", page.cars().size(), afterId);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.cars());
+    }
+
+    /**
+     * GET /api/cars/{id}
+     * Получаем автомобиль по ID
+     *
+     * @param id ID машины
+     * @return найденный автомобиль, в ETag - его версия (304, если совпала с If-None-Match)
+     */
+    @Operation(
+            summary = "Get car by ID",
+            description = "Returns a car by ID",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Found"),
+                    @ApiResponse(responseCode = "404", description = "Not found")
+            }
+    )
+    @GetMapping("/{id:\\d+}")
+    ResponseEntity<Car> getCarById(@PathVariable long id, WebRequest request) {
+        Car car = carService.findById(id).orElse(null);
+
+        if (car == null) {
+            log.warn("Code 404 - Car not found for id {}", id);
+            return ResponseEntity.notFound().build();
+        }
+
+        String etag = versionEtag(car);
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Car {} not modified", id);
+            return notModified();
+        }
+        log.info("Code 200 - Car found for id {}", id);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .body(car);
+    }
+
+    /**
+     * GET /api/cars/search
+     * Ищем автомобили по любому набору фильтров одним SQL-запросом
+     * (или пустой список, если ничего не найдено)
+     *
+     * @param color       цвет (без учета регистра)
+     * @param minPrice    минимальная цена
+     * @param maxPrice    максимальная цена
+     * @param minYear     минимальный год выпуска
+     * @param maxYear     максимальный год выпуска
+     * @param engineType  тип двигателя (без учета регистра)
+     * @param modelPrefix начало названия модели (без учета регистра)
+     * @param sort        поле и направление сортировки, например price,desc
+     * @param limit       максимальное количество автомобилей в ответе
+     * @return найденные автомобили, в ETag - версия таблицы (304, если совпала с If-None-Match)
+     */
+    @Operation(
+            summary = "Search cars",
+            description = "Returns cars matching all given filters, sorted and limited",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Found"),
+                    @ApiResponse(responseCode = "400", description = "Bad request"),
+                    @ApiResponse(responseCode = "404", description = "Not found")
+            }
+    )
+    @GetMapping("/search")
+    ResponseEntity<List<CarView>> searchCars(@RequestParam(required = false) String color,
+                                         @RequestParam(required = false) Double minPrice,
+                                         @RequestParam(required = false) Double maxPrice,
+                                         @RequestParam(required = false) Integer minYear,
+                                         @RequestParam(required = false) Integer maxYear,
+                                         @RequestParam(required = false) String engineType,
+                                         @RequestParam(required = false) String modelPrefix,
+                                         @RequestParam(defaultValue = "id") String sort,
+                                         @RequestParam(defaultValue = "100") int limit,
+                                         WebRequest request) {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            log.error("Code 400 - The maxPrice ({}) value must be greater than the minPrice value ({})",
+                    maxPrice, minPrice);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        if (minYear != null && maxYear != null && minYear > maxYear) {
+            log.error("Code 400 - The maxYear ({}) value must be greater than the minYear value ({})",
+                    maxYear, minYear);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > maxPageLimit) {
+            log.error("Code 400 - Search limit must be between 1 and {}, got {}", maxPageLimit, limit);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+
+        Sort searchSort = parseSort(sort);
+        if (searchSort == null) {
+            log.error("Code 400 - Unsupported sort {}", sort);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+
+        CarSearchCriteria criteria = new CarSearchCriteria(
+                color, minPrice, maxPrice, minYear, maxYear, engineType, modelPrefix);
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars for {} not modified", criteria);
+            return notModified();
+        }
+
+        List<CarView> foundCars = carService.searchCars(criteria, searchSort, limit);
+
+        if (foundCars.isEmpty()) {
+            log.warn("Code 404 - No cars found for {}", criteria);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
+        } else {
+            log.info("Code 200 - {} Cars found for {}", foundCars.size(), criteria);
+            return ResponseEntity.ok().eTag(etag).body(foundCars);
+        }
+    }
+
+    /**
+     * GET /api/cars/search/text
+     * Нечеткий поиск по модели: сначала модели, начинающиеся с запроса, затем похожие
+     * (в том числе с опечатками) по убыванию похожести
+     * (или пустой список, если ничего не найдено)
+     *
+     * @param q     запрос без учета регистра, например "bmw x" или "ferary"
+     * @param limit максимальное количество автомобилей в ответе
+     * @return найденные автомобили, в ETag - версия таблицы (304, если совпала с If-None-Match)
+     */
+    @Operation(
+            summary = "Search cars by model text",
+            description = "Returns cars whose model starts with or is similar to the query, best matches first",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Found"),
+                    @ApiResponse(responseCode = "400", description = "Bad request"),
+                    @ApiResponse(responseCode = "404", description = "Not found")
+            }
+    )
+    @GetMapping("/search/text")
+    ResponseEntity<List<CarView>> searchCarsByModel(@RequestParam String q,
+                                                    @RequestParam(defaultValue = "20") int limit,
+                                                    WebRequest request) {
+        if (q.isBlank() || q.length() > MAX_TEXT_QUERY_LENGTH) {
+            log.error("Code 400 - Text query must be 1 to {} characters, got {}", MAX_TEXT_QUERY_LENGTH, q.length());
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > maxPageLimit) {
+            log.error("Code 400 - Search limit must be between 1 and {}, got {}", maxPageLimit, limit);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars for text {} not modified", q);
+            return notModified();
+        }
+
+        List<CarView> foundCars = carService.searchCarsByModel(q, limit);
+
+        if (foundCars.isEmpty()) {
+            log.warn("Code 404 - No cars found for text {}", q);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
+        } else {
+            log.info("Code 200 - {} Cars found for text {}", foundCars.size(), q);
+            return ResponseEntity.ok().eTag(etag).body(foundCars);
+        }
     }
 
     /**
@@ -66,6 +422,7 @@ public class RestApiCarController {
      */
     @Operation(
             summary = "Get cars by color",
+            deprecated = true,
             description = "Returns a list of cars filtered by color",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Found"),
@@ -73,15 +430,21 @@ public class RestApiCarController {
             }
     )
     @GetMapping("/color/{color}")
-    ResponseEntity<List<Car>> getCarsByColor(@PathVariable String color) {
-        List<Car> filteredCars = carRepository.findCarByColorIgnoreCase(color);
+    ResponseEntity<List<CarView>> getCarsByColor(@PathVariable String color, WebRequest request) {
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars for color {} not modified", color);
+            return notModified();
+        }
+
+        List<CarView> filteredCars = carService.findByColor(color);
 
         if (filteredCars.isEmpty()) {
             log.warn("Code 404 - No cars found for color {}", color);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         } else {
             log.info("Code 200 - {} Cars found for color {}", filteredCars.size(), color);
-            return new ResponseEntity<>(filteredCars, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag).body(filteredCars);
         }
     }
 
@@ -96,6 +459,7 @@ public class RestApiCarController {
      */
     @Operation(
             summary = "Get cars by price between min and max",
+            deprecated = true,
             description = "Returns a list of cars whose price is inclusive between min and max",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Found"),
@@ -104,14 +468,21 @@ public class RestApiCarController {
             }
     )
     @GetMapping("/price/between/{min}/{max}")
-    ResponseEntity<List<Car>> getCarsByPriceBetween(@PathVariable Double min, @PathVariable Double max) {
+    ResponseEntity<List<CarView>> getCarsByPriceBetween(@PathVariable Double min, @PathVariable Double max,
+                                                        WebRequest request) {
         if (min > max) {
             log.error("Code 400 - The max ({}) value must be greater than the min value ({})",
                     max, min);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
         }
 
-        List<Car> filteredCars = carRepository.findCarByPriceBetween(min, max);
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars for the range from {} to {} not modified", min, max);
+            return notModified();
+        }
+
+        List<CarView> filteredCars = carService.findByPriceRange(min, max);
         if (filteredCars.isEmpty()) {
             log.warn("Code 404 - No cars were found for the range from {} to {}",
                     min, max);
@@ -119,7 +490,7 @@ public class RestApiCarController {
         } else {
             log.info("Code 200 - {} Cars were found for the range from {} to {}",
                     filteredCars.size(), min, max);
-            return new ResponseEntity<>(filteredCars, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag).body(filteredCars);
         }
     }
 
@@ -133,6 +504,7 @@ public class RestApiCarController {
      */
     @Operation(
             summary = "Get cars by price less than or equal to max",
+            deprecated = true,
             description = "Returns a list of cars with price less than or equal to max",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Found"),
@@ -140,8 +512,14 @@ public class RestApiCarController {
             }
     )
     @GetMapping("/price/under/{max}")
-    ResponseEntity<List<Car>> getCarsByPriceLessThanEqual(@PathVariable Double max) {
-        List<Car> filteredCars = carRepository.findCarByPriceLessThanEqual(max);
+    ResponseEntity<List<CarView>> getCarsByPriceLessThanEqual(@PathVariable Double max, WebRequest request) {
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars with a price less than or equal to {} not modified", max);
+            return notModified();
+        }
+
+        List<CarView> filteredCars = carService.findByPriceRange(null, max);
 
         if (filteredCars.isEmpty()) {
             log.warn("Code 404 - No cars with a price less than or equal to {} were found",
@@ -150,7 +528,7 @@ public class RestApiCarController {
         } else {
             log.info("Code 200 - {} Cars with a price less than or equal to {} were found",
                     filteredCars.size(), max);
-            return new ResponseEntity<>(filteredCars, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag).body(filteredCars);
         }
     }
 
@@ -164,6 +542,7 @@ public class RestApiCarController {
      */
     @Operation(
             summary = "Get cars by price greater than or equal to min",
+            deprecated = true,
             description = "Returns a list of cars with price greater than or equal to min",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Found"),
@@ -171,8 +550,14 @@ public class RestApiCarController {
             }
     )
     @GetMapping("/price/over/{min}")
-    ResponseEntity<List<Car>> getCarsByPriceGreaterThanEqual(@PathVariable Double min) {
-        List<Car> filteredCars = carRepository.findCarByPriceGreaterThanEqual(min);
+    ResponseEntity<List<CarView>> getCarsByPriceGreaterThanEqual(@PathVariable Double min, WebRequest request) {
+        String etag = listEtag();
+        if (request.checkNotModified(etag)) {
+            log.info("Code 304 - Cars with a price greater than or equal to {} not modified", min);
+            return notModified();
+        }
+
+        List<CarView> filteredCars = carService.findByPriceRange(min, null);
 
         if (filteredCars.isEmpty()) {
             log.warn("Code 404 - No cars with a price greater than or equal to {} were found",
@@ -181,10 +566,32 @@ public class RestApiCarController {
         } else {
             log.info("Code 200 - {} Cars with a price greater than or equal to {} were found",
                     filteredCars.size(), min);
-            return new ResponseEntity<>(filteredCars, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(etag).body(filteredCars);
         }
     }
 
+    /**
+     * GET /api/cars/stats
+     * Получаем сводку для фильтров: минимальная, максимальная и средняя цена, количество машин
+     * по цвету, типу двигателя и году и гистограмма цен. Сводка хранится в памяти
+     * и обновляется при изменениях, поэтому запрос не читает таблицу cars
+     *
+     * @return сводка по всем автомобилям
+     */
+    @Operation(
+            summary = "Get car stats",
+            description = "Returns price min/max/avg, counts per color, engine type and year and a price histogram",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Successful")
+            }
+    )
+    @GetMapping("/stats")
+    ResponseEntity<CarStats> getStats() {
+        CarStats stats = carService.getStats();
+        log.info("Code 200 - Stats for {} Cars", stats.count());
+        return ResponseEntity.ok(stats);
+    }
+
     /**
      * POST /api/cars
      * Создает новый автомобиль и добавляет его в лист
@@ -202,47 +609,67 @@ public class RestApiCarController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     Car postCar(@RequestBody Car car) {
-        car.setId(null);
 //        if (car.getId() <= 0) {
 //            log.error("Code 400 - Car ID must be greater than 0");
 //            return new Car("000", "000", 9999.0);
 //        }
-        carRepository.save(car);
+        carService.createCar(car);
         log.info("Code 201 - Car posted successfully");
         return car;
     }
 
     /**
-     * Замена существующего автомобиля, если ID не найден, то создаем новый
+     * PUT /api/cars/{id}
+     * Замена существующего автомобиля, если ID не найден, то создаем новый (его адрес - в заголовке Location).
+     * Выполняется одним запросом к базе. С заголовком If-Match (ETag из GET /api/cars/{id})
+     * машина заменяется, только если с тех пор ее никто не изменил, иначе 412
      *
-     * @param id  ID машины, которую нужно изменить
-     * @param car новые данные машины
-     * @return созданный или найденный автомобиль
+     * @param id      ID машины, которую нужно изменить
+     * @param car     новые данные машины
+     * @param ifMatch ETag машины, которую клиент менял, или *, чтобы только заменить существующую
+     * @return замененный (200) или созданный (201) автомобиль, в ETag - его новая версия
      */
     @Operation(
             summary = "Change car",
-            description = "Change car data by ID",
+            description = "Replace car data by ID or create a new car, optionally guarded by If-Match",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Successful"),
                     @ApiResponse(responseCode = "201", description = "Created"),
-                    @ApiResponse(responseCode = "404", description = "Not found")
+                    @ApiResponse(responseCode = "400", description = "Color and model are required"),
+                    @ApiResponse(responseCode = "412", description = "Car was changed or deleted since If-Match version")
             }
     )
     @PutMapping("/{id}")
-    ResponseEntity<Car> putCar(@PathVariable long id, @RequestBody Car car) {
-        Car foundCar = carRepository.findById(id).orElse(null);
+    ResponseEntity<Car> putCar(@PathVariable long id, @RequestBody Car car,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion = null;
+        boolean mustExist = ifMatch != null;
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            Matcher matcher = VERSION_ETAG.matcher(ifMatch.trim());
+            if (!matcher.matches()) {
+                log.warn("Code 412 - If-Match {} is not a version of car {}", ifMatch, id);
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            expectedVersion = Long.parseLong(matcher.group(1));
+        }
 
-        if (foundCar == null) {
-            log.info("Code 404 - Car not found for id {}", id);
-        } else {
-            log.info("Code 200 - Car found for id {}", id);
-            car.setId(id);
-            carRepository.save(car);
+        Upserted result = carService.updateCar(id, car, expectedVersion, mustExist).orElse(null);
+        if (result == null) {
+            log.warn("Code 412 - Car {} was changed or deleted, If-Match {} does not match", id, ifMatch);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         }
 
-        return (foundCar == null)
-                ? new ResponseEntity<>(postCar(car), HttpStatus.CREATED)
-                : new ResponseEntity<>(car, HttpStatus.OK);
+        Car savedCar = result.after();
+        if (result.created()) {
+            log.info("Code 201 - Car not found for id {}, created with id {}", id, savedCar.getId());
+            return ResponseEntity.created(URI.create("/api/cars/" + savedCar.getId()))
+                    .eTag(versionEtag(savedCar))
+                    .body(savedCar);
+        }
+        log.info("Code 200 - Car found for id {}", id);
+        return ResponseEntity.ok()
+                .eTag(versionEtag(savedCar))
+                .body(savedCar);
     }
 
     /**
@@ -260,11 +687,186 @@ public class RestApiCarController {
     @DeleteMapping("/{id}")
     void deleteCar(@PathVariable long id) {
         log.info("Delete Car with ID {}", id);
-        carRepository.deleteById(id);
+        carService.deleteCar(id);
+    }
+
+    /**
+     * POST /api/cars/batch
+     * Создаем много машин одним запросом: JSON-массив или NDJSON (по машине в строке).
+     * Тело читается потоком, машины пишутся пакетными INSERT порциями, каждая в своей транзакции
+     *
+     * @param body машины без id (id из запроса игнорируется)
+     * @return результат по каждой машине: новый id или причина ошибки
+     */
+    @Operation(
+            summary = "Create cars in batch",
+            description = "Create many cars from a JSON array or NDJSON stream",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Processed, see result of each item"),
+                    @ApiResponse(responseCode = "207", description = "Invalid JSON, items before it were stored, see error and items"),
+                    @ApiResponse(responseCode = "400", description = "Invalid JSON before the first item, nothing stored")
+            }
+    )
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    ResponseEntity<CarBatchResult> postCarsBatch(InputStream body) {
+        return batchResponse(carBatchService.createCars(body));
+    }
+
+    /**
+     * PUT /api/cars/batch
+     * Заменяем машины с известным id, остальные создаем (как PUT /api/cars/{id} для каждой)
+     *
+     * @param body машины, JSON-массив или NDJSON
+     * @return результат по каждой машине: CREATED или UPDATED с id, или причина ошибки
+     */
+    @Operation(
+            summary = "Create or replace cars in batch",
+            description = "Replace cars with known ids and create the rest, from a JSON array or NDJSON stream",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Processed, see result of each item"),
+                    @ApiResponse(responseCode = "207", description = "Invalid JSON, items before it were stored, see error and items"),
+                    @ApiResponse(responseCode = "400", description = "Invalid JSON before the first item, nothing stored")
+            }
+    )
+    @PutMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    ResponseEntity<CarBatchResult> putCarsBatch(InputStream body) {
+        return batchResponse(carBatchService.upsertCars(body));
+    }
+
+    /**
+     * DELETE /api/cars/batch
+     * Удаляем машины по списку id
+     *
+     * @param body id машин, JSON-массив или NDJSON
+     * @return результат по каждому id: DELETED или NOT_FOUND
+     */
+    @Operation(
+            summary = "Delete cars in batch",
+            description = "Delete cars by a JSON array or NDJSON stream of ids",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Processed, see result of each item"),
+                    @ApiResponse(responseCode = "207", description = "Invalid JSON, items before it were stored, see error and items"),
+                    @ApiResponse(responseCode = "400", description = "Invalid JSON before the first item, nothing stored")
+            }
+    )
+    @DeleteMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    ResponseEntity<CarBatchResult> deleteCarsBatch(InputStream body) {
+        return batchResponse(carBatchService.deleteCars(body));
+    }
+
+    /**
+     * POST /api/cars/import
+     * Массовый импорт машин из файла CSV с заголовком (id,color,model,price,year,engine_type, id необязателен).
+     * Строки с id существующей машины заменяют ее, остальные создаются.
+     * Файл потоком загружается в PostgreSQL через COPY и записывается одной транзакцией,
+     * некорректные строки пропускаются
+     *
+     * @param body содержимое файла
+     * @return сколько строк прочитано, создано, заменено и пропущено, скорость импорта
+     */
+    @Operation(
+            summary = "Import cars from CSV",
+            description = "Bulk import of a CSV file with header id,color,model,price,year,engine_type via PostgreSQL COPY",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Imported, invalid rows are listed in rejects"),
+                    @ApiResponse(responseCode = "400", description = "File could not be parsed, nothing imported"),
+                    @ApiResponse(responseCode = "501", description = "Database is not PostgreSQL")
+            }
+    )
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    ResponseEntity<CarImportResult> importCarsCsv(InputStream body) {
+        return importResponse(carImportService.importCsv(body));
+    }
+
+    /**
+     * POST /api/cars/import
+     * Массовый импорт машин из NDJSON: по объекту машины в строке, как для /api/cars/batch
+     *
+     * @param body содержимое файла
+     * @return сколько строк прочитано, создано, заменено и пропущено, скорость импорта
+     */
+    @Operation(
+            summary = "Import cars from NDJSON",
+            description = "Bulk import of an NDJSON file (one car per line) via PostgreSQL COPY",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Imported, invalid rows are listed in rejects"),
+                    @ApiResponse(responseCode = "400", description = "File could not be parsed, nothing imported"),
+                    @ApiResponse(responseCode = "501", description = "Database is not PostgreSQL")
+            }
+    )
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<CarImportResult> importCarsNdjson(InputStream body) {
+        return importResponse(carImportService.importNdjson(body));
     }
 
     @PostMapping("/{id}/add-image")
     public void attachImage(@PathVariable Long id, @RequestParam MultipartFile file) {
         carService.attachImage(id, file);
     }
+
+    // Порции до ошибки разбора уже закоммичены: тогда 207 с результатами, чтобы клиент не повторил их заново
+    private ResponseEntity<CarBatchResult> batchResponse(CarBatchResult result) {
+        if (result.error() != null && result.items().isEmpty()) {
+            log.error("Code 400 - {}", result.error());
+            return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+        }
+        if (result.error() != null) {
+            log.warn("Code 207 - {} items processed before: {}", result.items().size(), result.error());
+            return new ResponseEntity<>(result, HttpStatus.MULTI_STATUS);
+        }
+        log.info("Code 200 - Car batch processed: {} created, {} updated, {} deleted, {} not found, {} failed",
+                result.created(), result.updated(), result.deleted(), result.notFound(), result.failed());
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    private ResponseEntity<CarImportResult> importResponse(CarImportResult result) {
+        if (result.error() != null) {
+            log.error("Code 400 - {}", result.error());
+            return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+        }
+        log.info("Code 200 - Cars imported: {} inserted, {} updated, {} rejected",
+                result.inserted(), result.updated(), result.rejected());
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    // ETag машины - ее версия (@Version), меняется при каждом изменении
+    private static String versionEtag(Car car) {
+        return "\"" + car.getVersion() + "\"";
+    }
+
+    // ETag списков - версия таблицы cars, меняется при любом изменении машин.
+    // Версия одна на все списки, а ETag сравнивается только с ответами того же URL
+    private String listEtag() {
+        return "\"cars-" + carTableVersion.current() + "\"";
+    }
+
+    // ETag в ответ 304 уже записал checkNotModified, второй раз не добавляем
+    private static <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    }
+
+    /**
+     * Разбираем параметр сортировки вида "price" или "price,desc".
+     * Сортировать можно только по проиндексированным полям,
+     * id добавляется вторым ключом, чтобы порядок был стабильным
+     *
+     * @return сортировка или null, если параметр некорректный
+     */
+    private Sort parseSort(String sort) {
+        String[] parts = sort.split(",");
+        if (parts.length > 2 || !SEARCH_SORT_FIELDS.contains(parts[0])) {
+            return null;
+        }
+
+        Sort.Direction direction = Sort.Direction.ASC;
+        if (parts.length == 2) {
+            direction = Sort.Direction.fromOptionalString(parts[1]).orElse(null);
+            if (direction == null) {
+                return null;
+            }
+        }
+
+        Sort result = Sort.by(direction, parts[0]);
+        return parts[0].equals("id") ? result : result.and(Sort.by("id"));
+    }
 }
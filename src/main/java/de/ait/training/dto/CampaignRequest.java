@@ -0,0 +1,37 @@
+package de.ait.training.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запрос на рассылку одного шаблона многим получателям.
+ * Нужно указать ровно один источник адресов: recipients или contacts.
+ *
+ * @param subject    тема письма
+ * @param template   шаблон из templates/email, например email/CarService
+ * @param variables  переменные, общие для всех писем
+ * @param recipients явный список получателей с персональными переменными
+ * @param contacts   выборка из сохраненных контактов
+ */
+public record CampaignRequest(
+        String subject,
+        String template,
+        Map<String, Object> variables,
+        List<CampaignRecipient> recipients,
+        ContactQuery contacts
+) {
+    /**
+     * @param email     адрес получателя
+     * @param variables персональные переменные, например userName
+     */
+    public record CampaignRecipient(String email, Map<String, String> variables) {
+    }
+
+    /**
+     * Подписанные контакты, в контактах имя подставляется в переменную userName
+     *
+     * @param emailDomain только адреса этого домена (необязательный)
+     */
+    public record ContactQuery(String emailDomain) {
+    }
+}
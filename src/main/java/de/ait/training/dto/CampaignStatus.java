@@ -0,0 +1,24 @@
+package de.ait.training.dto;
+
+import java.time.Instant;
+
+/**
+ * Состояние рассылки для GET /api/email/campaigns/{id}
+ *
+ * @param total  сколько писем поставлено в отправку (для контактов растет по мере чтения из базы)
+ * @param sent   сколько писем принял SMTP-сервер
+ * @param failed сколько писем не удалось отправить после всех попыток
+ */
+public record CampaignStatus(
+        String id,
+        State state,
+        int total,
+        int sent,
+        int failed,
+        Instant createdAt,
+        Instant finishedAt
+) {
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+}
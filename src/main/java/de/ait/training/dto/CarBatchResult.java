@@ -0,0 +1,35 @@
+package de.ait.training.dto;
+
+import java.util.List;
+
+/**
+ * Итог пакетной операции /api/cars/batch
+ *
+ * @param items результат по каждому элементу в порядке запроса
+ * @param error почему обработка остановилась (например, некорректный JSON), или null.
+ *              Элементы из items при этом уже сохранены (ответ 207), повторять нужно только остальные
+ */
+public record CarBatchResult(
+        int created,
+        int updated,
+        int deleted,
+        int notFound,
+        int failed,
+        List<Item> items,
+        String error
+) {
+    /**
+     * @param index номер элемента в запросе, с 0
+     * @param id    id машины (для созданных - новый id)
+     * @param error причина, если status = FAILED
+     */
+    public record Item(int index, Long id, Status status, String error) {
+        public Item withIndex(int newIndex) {
+            return new Item(newIndex, id, status, error);
+        }
+    }
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, NOT_FOUND, FAILED
+    }
+}
@@ -0,0 +1,33 @@
+package de.ait.training.dto;
+
+import java.util.List;
+
+/**
+ * Итог импорта /api/cars/import
+ *
+ * @param rows          сколько строк с данными прочитано
+ * @param inserted      сколько машин создано
+ * @param updated       сколько существующих машин заменено (строки с их id)
+ * @param rejected      сколько строк пропущено из-за некорректных значений
+ * @param rejects       первые пропущенные строки с причинами
+ * @param durationMillis время импорта целиком
+ * @param rowsPerSecond  скорость импорта, строк в секунду
+ * @param error         почему файл не удалось разобрать, или null. В этом случае ничего не импортировано
+ */
+public record CarImportResult(
+        long rows,
+        long inserted,
+        long updated,
+        long rejected,
+        List<Reject> rejects,
+        long durationMillis,
+        double rowsPerSecond,
+        String error
+) {
+    /**
+     * @param row   номер строки с данными, с 1 (заголовок CSV не считается)
+     * @param error причина
+     */
+    public record Reject(long row, String error) {
+    }
+}
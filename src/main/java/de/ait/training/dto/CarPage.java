@@ -0,0 +1,12 @@
+package de.ait.training.dto;
+
+import java.util.List;
+
+/**
+ * Одна страница keyset-пагинации.
+ *
+ * @param cars       автомобили страницы, отсортированные по id
+ * @param nextCursor курсор следующей страницы или null, если это последняя страница
+ */
+public record CarPage(List<CarView> cars, String nextCursor) {
+}
@@ -0,0 +1,23 @@
+package de.ait.training.dto;
+
+/**
+ * Фильтры для поиска автомобилей. Любое поле может быть null - тогда фильтр не применяется.
+ *
+ * @param color       цвет (без учета регистра)
+ * @param minPrice    минимальная цена включительно
+ * @param maxPrice    максимальная цена включительно
+ * @param minYear     минимальный год выпуска включительно
+ * @param maxYear     максимальный год выпуска включительно
+ * @param engineType  тип двигателя (без учета регистра)
+ * @param modelPrefix начало названия модели (без учета регистра)
+ */
+public record CarSearchCriteria(
+        String color,
+        Double minPrice,
+        Double maxPrice,
+        Integer minYear,
+        Integer maxYear,
+        String engineType,
+        String modelPrefix
+) {
+}
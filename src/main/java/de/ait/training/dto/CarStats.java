@@ -0,0 +1,37 @@
+package de.ait.training.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сводка по всем автомобилям для фильтров на фронтенде (/api/cars/stats).
+ *
+ * @param count            сколько всего машин
+ * @param minPrice         минимальная цена или null, если машин нет
+ * @param maxPrice         максимальная цена или null, если машин нет
+ * @param avgPrice         средняя цена или null, если машин нет
+ * @param colors           количество машин по цвету (в нижнем регистре, как ищет /api/cars/color)
+ * @param engineTypes      количество машин по типу двигателя (машины без типа не считаются)
+ * @param years            количество машин по году выпуска
+ * @param priceBucketWidth ширина корзины гистограммы цен
+ * @param priceHistogram   непустые корзины гистограммы цен по возрастанию
+ */
+public record CarStats(
+        long count,
+        Double minPrice,
+        Double maxPrice,
+        Double avgPrice,
+        Map<String, Long> colors,
+        Map<String, Long> engineTypes,
+        Map<Integer, Long> years,
+        double priceBucketWidth,
+        List<PriceBucket> priceHistogram
+) {
+    /**
+     * @param from  нижняя граница цены включительно
+     * @param to    верхняя граница цены не включительно
+     * @param count сколько машин в корзине
+     */
+    public record PriceBucket(double from, double to, long count) {
+    }
+}
@@ -0,0 +1,20 @@
+package de.ait.training.dto;
+
+/**
+ * Машина только для чтения: списки и фильтры выбирают эти поля запросом
+ * select new CarView(...), без создания сущностей Car и их учета в контексте персистентности.
+ * В JSON совпадает с Car
+ */
+public record CarView(
+        Long id,
+        String color,
+        String model,
+        double price,
+        int year,
+        String engineType,
+        String imageUrl,
+        String thumbnailUrl,
+        String mediumUrl,
+        Long version
+) {
+}
@@ -0,0 +1,12 @@
+package de.ait.training.event;
+
+import de.ait.training.model.Car;
+
+/**
+ * Публикуется после любого изменения автомобиля.
+ *
+ * @param before состояние до изменения (null, если автомобиль создан)
+ * @param after  состояние после изменения (null, если автомобиль удален)
+ */
+public record CarChangedEvent(Car before, Car after) {
+}
@@ -1,5 +1,6 @@
 package de.ait.training.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -9,7 +10,9 @@ import lombok.*;
 @Table(name = "cars")
 public class Car {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // стратегия получения - авто-инкремент
+    // id из последовательности cars_seq блоками по 50 (pooled-lo), чтобы INSERT шли пачками
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cars_seq")
+    @SequenceGenerator(name = "cars_seq", sequenceName = "cars_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false) // при попытке сохранить Null будет ошибка
@@ -24,10 +27,38 @@ public class Car {
     private String engineType;
     @Column(name = "image_url")
     private String imageUrl;
+    // SHA-256 файла картинки (image_blobs), нужен только для учета ссылок
+    @JsonIgnore
+    @Column(name = "image_hash")
+    private String imageHash;
+    // Уменьшенные копии картинки, появляются после фоновой генерации (ImageVariantService)
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+    @Column(name = "medium_url")
+    private String mediumUrl;
+    // Растет при каждом изменении, отдается как ETag. null - новая машина или версия не передана
+    @Version
+    @Column(nullable = false)
+    private Long version;
 
     public Car(String color, String model, double price) {
         this.color = color;
         this.model = model;
         this.price = price;
     }
+
+    // Снимок текущего состояния: управляемая сущность дальше может меняться,
+    // а в событиях и кэше нужны неизменные значения
+    public Car copy() {
+        Car copy = new Car(color, model, price);
+        copy.setId(id);
+        copy.setYear(year);
+        copy.setEngineType(engineType);
+        copy.setImageUrl(imageUrl);
+        copy.setImageHash(imageHash);
+        copy.setThumbnailUrl(thumbnailUrl);
+        copy.setMediumUrl(mediumUrl);
+        copy.setVersion(version);
+        return copy;
+    }
 }
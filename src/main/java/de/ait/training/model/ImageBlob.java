@@ -0,0 +1,26 @@
+package de.ait.training.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Файл картинки, сохраненный под хэшем содержимого, и сколько машин на него ссылается
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "image_blobs")
+public class ImageBlob {
+    @Id
+    @Column(length = 64)
+    private String hash; // SHA-256 содержимого, hex
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+    @Column(nullable = false)
+    private long size;
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
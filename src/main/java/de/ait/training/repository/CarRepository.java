@@ -1,16 +1,48 @@
 package de.ait.training.repository;
 
 import de.ait.training.model.Car;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
-public interface CarRepository extends JpaRepository<Car, Long> {
-    List<Car> findCarByColorIgnoreCase(String color);
+// Запросы списков с динамической проекцией: type = Car.class - управляемые сущности,
+// CarView.class - select new CarView(...) только для чтения, без сущностей и снимков для dirty checking
+public interface CarRepository extends JpaRepository<Car, Long>, JpaSpecificationExecutor<Car>, CarUpsertRepository,
+        CarTextSearchRepository {
+    // Производный запрос с IgnoreCase генерирует upper(color) = upper(?), а индекс построен по lower(color)
+    @Query("select c from Car c where lower(c.color) = lower(:color)")
+    <T> List<T> findCarByColorIgnoreCase(@Param("color") String color, Class<T> type);
 
-    List<Car> findCarByPriceBetween(Double min, Double max);
+    <T> List<T> findCarByPriceBetween(Double min, Double max, Class<T> type);
 
-    List<Car> findCarByPriceLessThanEqual(Double max);
+    <T> List<T> findCarByPriceLessThanEqual(Double max, Class<T> type);
 
-    List<Car> findCarByPriceGreaterThanEqual(Double min);
+    <T> List<T> findCarByPriceGreaterThanEqual(Double min, Class<T> type);
+
+    <T> List<T> findAllBy(Class<T> type);
+
+    // Keyset (seek) пагинация: WHERE id > :afterId ORDER BY id LIMIT :limit
+    // идет по индексу первичного ключа и не деградирует на дальних страницах, в отличие от OFFSET
+    <T> List<T> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit, Class<T> type);
+
+    // Сводка для CarAggregates: одна строка на сочетание цвета, типа двигателя, года и цены
+    @Query("select lower(c.color) as color, c.engineType as engineType, c.year as year, c.price as price, "
+            + "count(c) as cars from Car c group by lower(c.color), c.engineType, c.year, c.price")
+    List<CarGroup> countGroups();
+
+    interface CarGroup {
+        String getColor();
+
+        String getEngineType();
+
+        int getYear();
+
+        double getPrice();
+
+        long getCars();
+    }
 }
@@ -0,0 +1,65 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.model.Car;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Собирает один SQL-запрос из заданных фильтров.
+ * В WHERE попадают только переданные условия, и выражения совпадают с индексами
+ * из db.changelog-6.0-add-search-indexes.xml (lower(color), lower(engine_type), lower(model) LIKE 'x%')
+ */
+public final class CarSpecifications {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private CarSpecifications() {
+    }
+
+    public static Specification<Car> matching(CarSearchCriteria criteria) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (criteria.color() != null) {
+                predicates.add(builder.equal(builder.lower(root.get("color")), lower(criteria.color())));
+            }
+            if (criteria.minPrice() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("price"), criteria.minPrice()));
+            }
+            if (criteria.maxPrice() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("price"), criteria.maxPrice()));
+            }
+            if (criteria.minYear() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("year"), criteria.minYear()));
+            }
+            if (criteria.maxYear() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("year"), criteria.maxYear()));
+            }
+            if (criteria.engineType() != null) {
+                predicates.add(builder.equal(builder.lower(root.get("engineType")), lower(criteria.engineType())));
+            }
+            if (criteria.modelPrefix() != null) {
+                predicates.add(builder.like(builder.lower(root.get("model")),
+                        escapeLike(lower(criteria.modelPrefix())) + "%", LIKE_ESCAPE));
+            }
+
+            return builder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    // % и _ из пользовательского ввода должны искаться буквально, а не как шаблон
+    private static String escapeLike(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
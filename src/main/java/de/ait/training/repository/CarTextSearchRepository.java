@@ -0,0 +1,21 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarView;
+
+import java.util.List;
+
+/**
+ * Нечеткий поиск по модели: совпадение начала и похожие названия с опечатками, лучшие совпадения первыми.
+ * В PostgreSQL - pg_trgm (word_similarity) по GIN-индексу, в других базах (H2 в тестах) - то же ранжирование в Java
+ */
+public interface CarTextSearchRepository {
+    /**
+     * Сначала машины, модель которых начинается с запроса, затем остальные по убыванию похожести
+     * (доля триграмм запроса, найденных в модели), при равенстве - по id.
+     * Похожесть ниже app.cars.text-search.threshold в результат не попадает
+     *
+     * @param query запрос без учета регистра, например "bmw x"
+     * @param limit максимальное количество машин
+     */
+    List<CarView> searchByModel(String query, int limit);
+}
@@ -0,0 +1,146 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Реализация CarTextSearchRepository, Spring Data подключает ее к CarRepository по имени *Impl
+ */
+class CarTextSearchRepositoryImpl implements CarTextSearchRepository {
+    private static final String COLUMNS =
+            "id, color, model, price, year, engine_type, image_url, thumbnail_url, medium_url, version";
+
+    // Порог оператора <% задается на транзакцию (is_local = true), поэтому метод вызывается в транзакции
+    private static final String SET_THRESHOLD =
+            "SELECT set_config('pg_trgm.word_similarity_threshold', :threshold, true)";
+    // Префикс идет по idx_cars_lower_model_prefix, :query <% lower(model) - по GIN idx_cars_lower_model_trgm
+    // (BitmapOr). word_similarity считается только для найденных строк, а не для всей таблицы
+    private static final String SEARCH = """
+            SELECT %s
+            FROM cars
+            WHERE lower(model) LIKE :prefix ESCAPE '\\' OR :query <%% lower(model)
+            ORDER BY lower(model) LIKE :prefix ESCAPE '\\' DESC, word_similarity(:query, lower(model)) DESC, id
+            LIMIT :limit""".formatted(COLUMNS);
+
+    private static final String SELECT_MODELS = "SELECT DISTINCT lower(model) FROM cars";
+    private static final String SELECT_BY_MODELS = "SELECT " + COLUMNS + " FROM cars WHERE lower(model) IN (:models)";
+
+    private static final RowMapper<CarView> CAR_VIEW = (resultSet, rowNumber) -> new CarView(
+            resultSet.getLong("id"),
+            resultSet.getString("color"),
+            resultSet.getString("model"),
+            resultSet.getDouble("price"),
+            resultSet.getInt("year"),
+            resultSet.getString("engine_type"),
+            resultSet.getString("image_url"),
+            resultSet.getString("thumbnail_url"),
+            resultSet.getString("medium_url"),
+            resultSet.getLong("version"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final double threshold;
+    private volatile Boolean postgres;
+
+    CarTextSearchRepositoryImpl(DataSource dataSource,
+                                @Value("${app.cars.text-search.threshold:0.5}") double threshold) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.threshold = threshold;
+    }
+
+    @Override
+    public List<CarView> searchByModel(String query, int limit) {
+        String normalized = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        String prefix = escapeLike(normalized) + "%";
+        if (!isPostgres()) {
+            return searchInMemory(normalized, limit);
+        }
+
+        jdbcTemplate.queryForObject(SET_THRESHOLD,
+                new MapSqlParameterSource("threshold", Double.toString(threshold)), String.class);
+        return jdbcTemplate.query(SEARCH, new MapSqlParameterSource()
+                .addValue("query", normalized)
+                .addValue("prefix", prefix)
+                .addValue("limit", limit), CAR_VIEW);
+    }
+
+    /**
+     * Запасной вариант без pg_trgm (H2 в тестах): похожесть считается в Java по различным моделям,
+     * затем читаются машины подходящих моделей. Читает все модели, поэтому только для небольших таблиц
+     */
+    private List<CarView> searchInMemory(String query, int limit) {
+        Set<String> queryTrigrams = trigrams(query);
+        Map<String, Double> scores = new HashMap<>();
+        for (String model : jdbcTemplate.queryForList(SELECT_MODELS, Map.of(), String.class)) {
+            double score = wordSimilarity(queryTrigrams, model);
+            if (model.startsWith(query) || score >= threshold) {
+                scores.put(model, score);
+            }
+        }
+        if (scores.isEmpty()) {
+            return List.of();
+        }
+
+        Comparator<CarView> ranking = Comparator
+                .comparing((CarView car) -> !car.model().toLowerCase(Locale.ROOT).startsWith(query))
+                .thenComparing(car -> -scores.get(car.model().toLowerCase(Locale.ROOT)))
+                .thenComparing(CarView::id);
+        return jdbcTemplate.query(SELECT_BY_MODELS, Map.of("models", scores.keySet()), CAR_VIEW).stream()
+                .sorted(ranking)
+                .limit(limit)
+                .toList();
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    // Как word_similarity в pg_trgm: доля триграмм запроса, которые есть в строке
+    static double wordSimilarity(Set<String> queryTrigrams, String text) {
+        if (queryTrigrams.isEmpty()) {
+            return 0;
+        }
+        Set<String> textTrigrams = trigrams(text);
+        long common = queryTrigrams.stream().filter(textTrigrams::contains).count();
+        return (double) common / queryTrigrams.size();
+    }
+
+    // Триграммы как в pg_trgm: каждое слово дополняется двумя пробелами в начале и одним в конце
+    static Set<String> trigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    // % и _ из пользовательского ввода должны искаться буквально, а не как шаблон
+    private static String escapeLike(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,31 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Car;
+
+import java.util.Optional;
+
+/**
+ * Замена машины по id одним запросом INSERT ... ON CONFLICT (id) DO UPDATE (PostgreSQL)
+ * вместо findById + save: нет лишних обращений к базе и гонки между чтением и записью
+ */
+public interface CarUpsertRepository {
+    /**
+     * Заменяет машину с этим id или, если ее нет, создает новую под новым id из cars_seq.
+     * Строка блокируется до конца транзакции
+     *
+     * @param expectedVersion если не null, машина должна существовать и иметь эту версию
+     * @param mustExist       если true, новую машину не создаем (If-Match: *)
+     * @return машина до и после изменения, или пусто, если условие на версию не выполнено
+     */
+    Optional<Upserted> upsert(long id, Car car, Long expectedVersion, boolean mustExist);
+
+    /**
+     * @param before машина до изменения, null - машина создана
+     * @param after  сохраненная машина
+     */
+    record Upserted(Car before, Car after) {
+        public boolean created() {
+            return before == null;
+        }
+    }
+}
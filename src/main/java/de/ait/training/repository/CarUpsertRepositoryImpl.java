@@ -0,0 +1,93 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Car;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Реализация CarUpsertRepository, Spring Data подключает ее к CarRepository по имени *Impl
+ */
+class CarUpsertRepositoryImpl implements CarUpsertRepository {
+    private static final String COLUMNS =
+            "id, color, model, price, year, engine_type, image_url, image_hash, thumbnail_url, medium_url, version";
+
+    // before блокирует существующую строку (FOR UPDATE), поэтому параллельные PUT одной машины идут по очереди,
+    // а в before всегда последнее закоммиченное состояние. Новой машине id дает cars_seq, как при POST.
+    // Хэш картинки сохраняется, только если ссылка на картинку не изменилась
+    private static final String UPSERT = """
+            WITH before AS (
+                SELECT %1$s FROM cars WHERE id = :id FOR UPDATE
+            ),
+            upserted AS (
+                INSERT INTO cars (id, color, model, price, year, engine_type, image_url, thumbnail_url, medium_url, version)
+                SELECT coalesce((SELECT id FROM before), nextval('cars_seq')),
+                       :color, :model, :price, :year, :engineType, :imageUrl, :thumbnailUrl, :mediumUrl, 0
+                WHERE NOT :mustExist OR EXISTS (SELECT 1 FROM before)
+                ON CONFLICT (id) DO UPDATE
+                SET color = excluded.color,
+                    model = excluded.model,
+                    price = excluded.price,
+                    year = excluded.year,
+                    engine_type = excluded.engine_type,
+                    image_url = excluded.image_url,
+                    image_hash = CASE WHEN cars.image_url IS NOT DISTINCT FROM excluded.image_url
+                                      THEN cars.image_hash END,
+                    thumbnail_url = excluded.thumbnail_url,
+                    medium_url = excluded.medium_url,
+                    version = cars.version + 1
+                WHERE CAST(:expectedVersion AS BIGINT) IS NULL OR cars.version = :expectedVersion
+                RETURNING %1$s
+            )
+            SELECT u.*, b.id AS b_id, b.color AS b_color, b.model AS b_model, b.price AS b_price, b.year AS b_year,
+                   b.engine_type AS b_engine_type, b.image_url AS b_image_url, b.image_hash AS b_image_hash,
+                   b.thumbnail_url AS b_thumbnail_url, b.medium_url AS b_medium_url, b.version AS b_version
+            FROM upserted u
+            LEFT JOIN before b ON b.id = u.id""".formatted(COLUMNS);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    CarUpsertRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public Optional<Upserted> upsert(long id, Car car, Long expectedVersion, boolean mustExist) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("color", car.getColor())
+                .addValue("model", car.getModel())
+                .addValue("price", car.getPrice())
+                .addValue("year", car.getYear())
+                .addValue("engineType", car.getEngineType())
+                .addValue("imageUrl", car.getImageUrl())
+                .addValue("thumbnailUrl", car.getThumbnailUrl())
+                .addValue("mediumUrl", car.getMediumUrl())
+                .addValue("expectedVersion", expectedVersion)
+                .addValue("mustExist", mustExist || expectedVersion != null);
+
+        List<Upserted> rows = jdbcTemplate.query(UPSERT, parameters, (resultSet, rowNumber) -> new Upserted(
+                (resultSet.getObject("b_id") == null) ? null : mapCar(resultSet, "b_"),
+                mapCar(resultSet, "")));
+        return rows.stream().findFirst();
+    }
+
+    private static Car mapCar(ResultSet resultSet, String prefix) throws SQLException {
+        Car car = new Car(resultSet.getString(prefix + "color"), resultSet.getString(prefix + "model"),
+                resultSet.getDouble(prefix + "price"));
+        car.setId(resultSet.getLong(prefix + "id"));
+        car.setYear(resultSet.getInt(prefix + "year"));
+        car.setEngineType(resultSet.getString(prefix + "engine_type"));
+        car.setImageUrl(resultSet.getString(prefix + "image_url"));
+        car.setImageHash(resultSet.getString(prefix + "image_hash"));
+        car.setThumbnailUrl(resultSet.getString(prefix + "thumbnail_url"));
+        car.setMediumUrl(resultSet.getString(prefix + "medium_url"));
+        car.setVersion(resultSet.getLong(prefix + "version"));
+        return car;
+    }
+}
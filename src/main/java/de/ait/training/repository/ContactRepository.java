@@ -0,0 +1,35 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Contact;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ContactRepository extends JpaRepository<Contact, Long> {
+    // Подписанные контакты порциями по id (keyset), домен почты - необязательный фильтр.
+    // Домен экранируется: "%" из запроса не должен отправлять рассылку всем контактам
+    default List<Contact> findSubscribed(Long afterId, String emailDomain, Limit limit) {
+        return findSubscribedLike(afterId, emailDomain == null ? null : escapeLike(emailDomain), limit);
+    }
+
+    @Query("""
+            select c from Contact c
+            where c.subscribed = true and c.id > :afterId
+              and (:emailDomain is null or lower(c.email) like concat('%@', lower(:emailDomain)) escape '\\')
+            order by c.id
+            """)
+    List<Contact> findSubscribedLike(@Param("afterId") Long afterId,
+                                     @Param("emailDomain") String emailDomain,
+                                     Limit limit);
+
+    // % и _ из пользовательского ввода должны искаться буквально, а не как шаблон
+    private static String escapeLike(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,48 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.ImageBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+    // Строка создается с ref_count = 0, счетчик увеличивает acquire.
+    // ON CONFLICT DO NOTHING без списка колонок понимают и PostgreSQL, и H2 в режиме PostgreSQL
+    @Modifying
+    @Query(value = """
+            insert into image_blobs (hash, file_name, size, ref_count, updated_at)
+            values (:hash, :fileName, :size, 0, current_timestamp)
+            on conflict do nothing
+            """, nativeQuery = true)
+    void insertIfAbsent(@Param("hash") String hash,
+                        @Param("fileName") String fileName,
+                        @Param("size") long size);
+
+    // Блокирует строку до конца транзакции, поэтому сборщик мусора не удалит файл между acquire и коммитом
+    @Modifying
+    @Query("update ImageBlob b set b.refCount = b.refCount + 1, b.updatedAt = :now where b.hash = :hash")
+    int acquire(@Param("hash") String hash, @Param("now") Instant now);
+
+    @Modifying
+    @Query("update ImageBlob b set b.refCount = b.refCount - 1, b.updatedAt = :now where b.hash = :hash")
+    int release(@Param("hash") String hash, @Param("now") Instant now);
+
+    @Query("""
+            select b.hash from ImageBlob b
+            where b.refCount <= 0 and b.updatedAt < :before
+            order by b.updatedAt
+            """)
+    List<String> findUnreferenced(@Param("before") Instant before, Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from ImageBlob b where b.hash = :hash")
+    Optional<ImageBlob> lockByHash(@Param("hash") String hash);
+}
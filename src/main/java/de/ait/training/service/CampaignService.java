@@ -0,0 +1,233 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignRequest.CampaignRecipient;
+import de.ait.training.dto.CampaignStatus;
+import de.ait.training.model.Contact;
+import de.ait.training.repository.ContactRepository;
+import de.ait.training.util.RateLimiter;
+import de.ait.training.util.WorkerThreads;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Массовые рассылки. Шаблон рендерится один раз на рассылку (PreparedEmailTemplate),
+ * получатели обрабатываются порциями: порция ставится в очередь EmailDispatcher
+ * с ограничением скорости, и следующая читается только после отправки предыдущей.
+ * Состояние рассылок хранится в памяти, последние max-jobs доступны по id.
+ * Ожидающих запуска рассылок не больше queue-capacity: каждая держит в памяти весь список получателей
+ */
+@Slf4j
+@Service
+public class CampaignService {
+    private static final String USER_NAME_VARIABLE = "userName";
+
+    private final EmailService emailService;
+    private final ContactRepository contactRepository;
+    private final RateLimiter rateLimiter;
+    private final int chunkSize;
+    private final int maxJobs;
+    private final int queueCapacity;
+    private final Duration queueFullBackoff;
+    private final ExecutorService runners;
+    private final Map<String, CampaignJob> jobs = new ConcurrentHashMap<>();
+
+    public CampaignService(
+            EmailService emailService,
+            ContactRepository contactRepository,
+            @Value("${app.mail.campaign.rate-per-second:10}") double ratePerSecond,
+            @Value("${app.mail.campaign.chunk-size:200}") int chunkSize,
+            @Value("${app.mail.campaign.runners:1}") int runners,
+            @Value("${app.mail.campaign.max-jobs:100}") int maxJobs,
+            @Value("${app.mail.campaign.queue-capacity:10}") int queueCapacity,
+            @Value("${app.mail.campaign.queue-full-backoff:500ms}") Duration queueFullBackoff,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.emailService = emailService;
+        this.contactRepository = contactRepository;
+        this.rateLimiter = new RateLimiter(ratePerSecond);
+        this.chunkSize = chunkSize;
+        this.maxJobs = maxJobs;
+        this.queueCapacity = queueCapacity;
+        this.queueFullBackoff = queueFullBackoff;
+        // Как newFixedThreadPool, но с ограниченной очередью: при переполнении execute бросает RejectedExecutionException
+        this.runners = new ThreadPoolExecutor(runners, runners, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), WorkerThreads.factory("mail-campaign-", virtualThreads));
+    }
+
+    @PreDestroy
+    public void stop() {
+        runners.shutdownNow();
+    }
+
+    /**
+     * @throws RejectedExecutionException если queue-capacity рассылок уже ждут запуска
+     */
+    public CampaignStatus startCampaign(CampaignRequest request) {
+        removeOldJobs();
+        CampaignJob job = new CampaignJob(UUID.randomUUID().toString());
+        try {
+            runners.execute(() -> run(job, request));
+        } catch (RejectedExecutionException exception) {
+            throw new RejectedExecutionException("Campaign queue is full (" + queueCapacity + ")", exception);
+        }
+        jobs.put(job.id, job);
+        log.info("Campaign {} queued, template {}", job.id, request.template());
+        return job.toStatus();
+    }
+
+    public Optional<CampaignStatus> getCampaign(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(CampaignJob::toStatus);
+    }
+
+    private void run(CampaignJob job, CampaignRequest request) {
+        job.state = CampaignStatus.State.RUNNING;
+        try {
+            Map<String, Object> variables = (request.variables() == null) ? Map.of() : request.variables();
+            PreparedEmailTemplate template = emailService.prepareTemplate(
+                    request.template(), variables, recipientVariables(request));
+
+            if (request.recipients() != null) {
+                List<CampaignRecipient> recipients = request.recipients();
+                for (int from = 0; from < recipients.size(); from += chunkSize) {
+                    List<CampaignRecipient> chunk = recipients.subList(from, Math.min(from + chunkSize, recipients.size()));
+                    sendChunk(job, request.subject(), template, chunk);
+                }
+            } else {
+                sendToContacts(job, request.subject(), template, request.contacts().emailDomain());
+            }
+
+            job.finish(CampaignStatus.State.COMPLETED);
+            log.info("Campaign {} completed: {} sent, {} failed", job.id, job.sent.get(), job.failed.get());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            job.finish(CampaignStatus.State.FAILED);
+            log.warn("Campaign {} interrupted", job.id);
+        } catch (RuntimeException exception) {
+            job.finish(CampaignStatus.State.FAILED);
+            log.error("Campaign {} failed", job.id, exception);
+        }
+    }
+
+    private void sendToContacts(CampaignJob job, String subject, PreparedEmailTemplate template,
+                                String emailDomain) throws InterruptedException {
+        long afterId = 0L;
+        List<Contact> contacts;
+        do {
+            contacts = contactRepository.findSubscribed(afterId, emailDomain, Limit.of(chunkSize));
+            List<CampaignRecipient> chunk = contacts.stream()
+                    .map(contact -> new CampaignRecipient(contact.getEmail(), Map.of(USER_NAME_VARIABLE,
+                            (contact.getName() == null) ? "Client" : contact.getName())))
+                    .toList();
+            sendChunk(job, subject, template, chunk);
+            if (!contacts.isEmpty()) {
+                afterId = contacts.getLast().getId();
+            }
+        } while (contacts.size() == chunkSize);
+    }
+
+    private void sendChunk(CampaignJob job, String subject, PreparedEmailTemplate template,
+                           List<CampaignRecipient> chunk) throws InterruptedException {
+        job.total.addAndGet(chunk.size());
+        List<CompletableFuture<Void>> results = new ArrayList<>(chunk.size());
+        for (CampaignRecipient recipient : chunk) {
+            rateLimiter.acquire();
+            try {
+                results.add(queue(recipient, subject, template)
+                        .whenComplete((ignored, exception) ->
+                                (exception == null ? job.sent : job.failed).incrementAndGet()));
+            } catch (RuntimeException exception) {
+                // Например, некорректный адрес - пропускаем получателя, рассылка продолжается
+                log.warn("Campaign {}: email to {} not queued: {}", job.id, recipient.email(), exception.getMessage());
+                job.failed.incrementAndGet();
+            }
+        }
+
+        // Ждем порцию целиком, чтобы в памяти и в очереди была не больше чем одна порция писем
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .exceptionally(exception -> null)
+                .join();
+    }
+
+    private CompletableFuture<Void> queue(CampaignRecipient recipient, String subject,
+                                          PreparedEmailTemplate template) throws InterruptedException {
+        Map<String, String> variables = (recipient.variables() == null) ? Map.of() : recipient.variables();
+        while (true) {
+            try {
+                return emailService.queuePreparedEmail(recipient.email(), subject, template, variables);
+            } catch (RejectedExecutionException exception) {
+                // Очередь занята другими письмами - ждем, а не теряем получателя
+                Thread.sleep(queueFullBackoff.toMillis());
+            }
+        }
+    }
+
+    private Set<String> recipientVariables(CampaignRequest request) {
+        Set<String> names = new HashSet<>();
+        if (request.recipients() == null) {
+            names.add(USER_NAME_VARIABLE);
+            return names;
+        }
+        for (CampaignRecipient recipient : request.recipients()) {
+            if (recipient.variables() != null) {
+                names.addAll(recipient.variables().keySet());
+            }
+        }
+        return names;
+    }
+
+    private void removeOldJobs() {
+        if (jobs.size() < maxJobs) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .sorted((first, second) -> first.finishedAt.compareTo(second.finishedAt))
+                .limit(jobs.size() - maxJobs + 1L)
+                .forEach(job -> jobs.remove(job.id));
+    }
+
+    private static final class CampaignJob {
+        private final String id;
+        private final Instant createdAt = Instant.now();
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile CampaignStatus.State state = CampaignStatus.State.QUEUED;
+        private volatile Instant finishedAt;
+
+        private CampaignJob(String id) {
+            this.id = id;
+        }
+
+        private void finish(CampaignStatus.State finalState) {
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+
+        private CampaignStatus toStatus() {
+            return new CampaignStatus(id, state, total.get(), sent.get(), failed.get(), createdAt, finishedAt);
+        }
+    }
+}
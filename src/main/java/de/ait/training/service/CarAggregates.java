@@ -0,0 +1,174 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStats;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarRepository.CarGroup;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/**
+ * Сводка по машинам в памяти: количество, мин/макс/средняя цена, количество по цвету, типу двигателя,
+ * году и гистограмма цен. Строится из базы при старте одним запросом с GROUP BY,
+ * дальше обновляется по CarChangedEvent (старое состояние вычитается, новое прибавляется),
+ * поэтому /api/cars/stats таблицу cars не читает. Цены хранятся отсортированным мультимножеством,
+ * чтобы минимум и максимум оставались точными после удаления, сумма - в центах, без ошибки округления.
+ * Изменения в обход событий (импорт через COPY, SQL вручную, другие экземпляры приложения)
+ * учитываются пересборкой: после импорта и по расписанию (app.cars.stats.rebuild-interval).
+ * Пересборка запоминает версию таблицы (CarTableVersion) из того же снимка базы, что и сводку:
+ * событие транзакции с версией не больше этой уже учтено в сводке и второй раз не прибавляется
+ */
+@Slf4j
+@Component
+public class CarAggregates {
+    private final CarRepository carRepository;
+    private final CarTableVersion carTableVersion;
+    private final TransactionTemplate snapshotTransaction;
+    private final double priceBucketWidth;
+
+    private long count;
+    private long priceCentsSum;
+    private final NavigableMap<Long, Long> prices = new TreeMap<>();
+    private final Map<String, Long> colors = new HashMap<>();
+    private final Map<String, Long> engineTypes = new HashMap<>();
+    private final Map<Integer, Long> years = new HashMap<>();
+    private final Map<Long, Long> priceBuckets = new HashMap<>();
+    private boolean loaded;
+    // Версия таблицы, на которой построена сводка
+    private long version = -1;
+    // Готовый ответ, сбрасывается при изменении: между изменениями запросы копий не строят
+    private volatile CarStats snapshot;
+
+    public CarAggregates(CarRepository carRepository,
+                         CarTableVersion carTableVersion,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${app.cars.stats.price-bucket-width:10000}") double priceBucketWidth) {
+        this.carRepository = carRepository;
+        this.carTableVersion = carTableVersion;
+        // Версия и сводка читаются одним снимком: в READ COMMITTED между запросами мог пройти коммит.
+        // Не read-only: читаем основную базу. Отстающая реплика не видит только что закоммиченный импорт,
+        // а уже примененные события новее ее снимка пропали бы из сводки при сбросе до следующей пересборки
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.priceBucketWidth = priceBucketWidth;
+    }
+
+    public CarStats getStats() {
+        CarStats stats = snapshot;
+        if (stats != null) {
+            return stats;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                rebuild();
+            }
+            if (snapshot == null) {
+                snapshot = buildSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.cars.stats.rebuild-interval:1h}",
+            fixedDelayString = "${app.cars.stats.rebuild-interval:1h}")
+    public synchronized void rebuild() {
+        clear();
+        snapshotTransaction.executeWithoutResult(status -> {
+            version = carTableVersion.current();
+            for (CarGroup group : carRepository.countGroups()) {
+                add(group.getColor(), group.getEngineType(), group.getYear(), group.getPrice(), group.getCars());
+            }
+        });
+        loaded = true;
+        snapshot = null;
+        log.info("Car stats rebuilt: {} cars at table version {}", count, version);
+    }
+
+    // После коммита: откаченные изменения в сводку не попадают
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onCarChanged(CarChangedEvent event) {
+        if (!loaded) {
+            // Пересборка при первом запросе прочитает это изменение из базы
+            return;
+        }
+        OptionalLong eventVersion = carTableVersion.committedVersion();
+        if (eventVersion.isPresent() && eventVersion.getAsLong() <= version) {
+            // Событие опоздало: пересборка уже прочитала это изменение из базы
+            return;
+        }
+        apply(event.before(), -1);
+        apply(event.after(), 1);
+        snapshot = null;
+    }
+
+    private void apply(Car car, long delta) {
+        if (car != null) {
+            add(car.getColor().toLowerCase(Locale.ROOT), car.getEngineType(), car.getYear(), car.getPrice(), delta);
+        }
+    }
+
+    private void add(String color, String engineType, int year, double price, long cars) {
+        long cents = Math.round(price * 100);
+        count += cars;
+        priceCentsSum += cents * cars;
+        merge(prices, cents, cars);
+        merge(colors, color, cars);
+        if (engineType != null) {
+            merge(engineTypes, engineType, cars);
+        }
+        merge(years, year, cars);
+        merge(priceBuckets, (long) Math.floor(price / priceBucketWidth), cars);
+    }
+
+    // Счетчик, дошедший до нуля, удаляем: в ответе нет пустых значений
+    private static <K> void merge(Map<K, Long> counts, K key, long delta) {
+        counts.merge(key, delta, (current, added) -> current + added == 0 ? null : current + added);
+    }
+
+    private void clear() {
+        count = 0;
+        priceCentsSum = 0;
+        prices.clear();
+        colors.clear();
+        engineTypes.clear();
+        years.clear();
+        priceBuckets.clear();
+    }
+
+    private CarStats buildSnapshot() {
+        List<CarStats.PriceBucket> histogram = new ArrayList<>();
+        new TreeMap<>(priceBuckets).forEach((bucket, cars) -> histogram.add(new CarStats.PriceBucket(
+                bucket * priceBucketWidth, (bucket + 1) * priceBucketWidth, cars)));
+        boolean empty = count == 0;
+        return new CarStats(
+                count,
+                empty ? null : prices.firstKey() / 100.0,
+                empty ? null : prices.lastKey() / 100.0,
+                empty ? null : Math.round((double) priceCentsSum / count) / 100.0,
+                Collections.unmodifiableMap(new TreeMap<>(colors)),
+                Collections.unmodifiableMap(new TreeMap<>(engineTypes)),
+                Collections.unmodifiableMap(new TreeMap<>(years)),
+                priceBucketWidth,
+                List.copyOf(histogram));
+    }
+}
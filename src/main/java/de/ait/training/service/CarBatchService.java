@@ -0,0 +1,118 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.dto.CarBatchResult;
+import de.ait.training.dto.CarBatchResult.Item;
+import de.ait.training.dto.CarBatchResult.Status;
+import de.ait.training.model.Car;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Пакетная загрузка машин (например, ночной фид дилеров на десятки тысяч машин).
+ * Тело запроса - JSON-массив или NDJSON, читается потоком и пишется порциями по chunk-size:
+ * каждая порция - отдельная транзакция с пакетными INSERT/UPDATE/DELETE.
+ * Если порция не записалась целиком, ее элементы повторяются по одному,
+ * чтобы одна плохая запись не откатила остальные
+ */
+@Slf4j
+@Service
+public class CarBatchService {
+    private final CarService carService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public CarBatchService(CarService carService, ObjectMapper objectMapper,
+                           @Value("${app.cars.batch.chunk-size:500}") int chunkSize) {
+        this.carService = carService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    public CarBatchResult createCars(InputStream body) {
+        return process(body, Car.class, carService::createCars);
+    }
+
+    public CarBatchResult upsertCars(InputStream body) {
+        return process(body, Car.class, carService::upsertCars);
+    }
+
+    public CarBatchResult deleteCars(InputStream body) {
+        return process(body, Long.class, carService::deleteCars);
+    }
+
+    private <T> CarBatchResult process(InputStream body, Class<T> type, Function<List<T>, List<Item>> writer) {
+        List<Item> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        String error = null;
+
+        // readValues понимает и массив верхнего уровня, и значения подряд (NDJSON)
+        try (MappingIterator<T> values = objectMapper.readerFor(type).readValues(body)) {
+            while (values.hasNextValue()) {
+                chunk.add(values.nextValue());
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, writer, results);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException | RuntimeException exception) {
+            error = "Invalid item at index " + (results.size() + chunk.size()) + ": "
+                    + NestedExceptionUtils.getMostSpecificCause(exception).getMessage();
+            log.warn("Car batch stopped: {}", error);
+            // Элементы, прочитанные до ошибки, все равно записываем
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunk, writer, results);
+        }
+
+        return summarize(results, error);
+    }
+
+    private <T> void writeChunk(List<T> chunk, Function<List<T>, List<Item>> writer, List<Item> results) {
+        int offset = results.size();
+        try {
+            for (Item item : writer.apply(chunk)) {
+                results.add(item.withIndex(offset + item.index()));
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Car batch chunk at index {} failed, retrying items one by one: {}", offset,
+                    NestedExceptionUtils.getMostSpecificCause(exception).getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                results.add(writeOne(chunk.get(i), writer).withIndex(offset + i));
+            }
+        }
+    }
+
+    private <T> Item writeOne(T value, Function<List<T>, List<Item>> writer) {
+        try {
+            return writer.apply(Collections.singletonList(value)).getFirst();
+        } catch (RuntimeException exception) {
+            return new Item(0, null, Status.FAILED, NestedExceptionUtils.getMostSpecificCause(exception).getMessage());
+        }
+    }
+
+    private static CarBatchResult summarize(List<Item> items, String error) {
+        int[] counts = new int[Status.values().length];
+        for (Item item : items) {
+            counts[item.status().ordinal()]++;
+        }
+        return new CarBatchResult(
+                counts[Status.CREATED.ordinal()],
+                counts[Status.UPDATED.ordinal()],
+                counts[Status.DELETED.ordinal()],
+                counts[Status.NOT_FOUND.ordinal()],
+                counts[Status.FAILED.ordinal()],
+                items,
+                error);
+    }
+}
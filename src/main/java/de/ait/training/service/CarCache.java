@@ -0,0 +1,153 @@
+package de.ait.training.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.ait.training.dto.CarView;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through кэш для поиска по id, цвету и диапазону цены.
+ * Размер ограничен (вытесняются редко используемые записи), TTL - страховка
+ * на случай изменений в базе в обход приложения.
+ * Метрики hit/miss/eviction доступны в /actuator/metrics/cache.gets и cache.evictions
+ * с тегом cache=cars.byId, cars.byColor, cars.byPrice.
+ * Загрузка, начатая до сброса, в кэше не остается (см. get), а машины хранятся и отдаются копиями:
+ * вызывающий код может менять полученную сущность, не портя кэш
+ */
+@Slf4j
+@Component
+public class CarCache {
+    private final Cache<Long, Car> byId;
+    private final Cache<String, List<CarView>> byColor;
+    private final Cache<PriceRange, List<CarView>> byPrice;
+    // Растет при каждом сбросе, до удаления записей
+    private final AtomicLong generation = new AtomicLong();
+
+    public CarCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.cars.cache.by-id.max-size:10000}") long byIdMaxSize,
+            @Value("${app.cars.cache.queries.max-size:1000}") long queriesMaxSize,
+            @Value("${app.cars.cache.ttl:10m}") Duration ttl
+    ) {
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(byIdMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.byColor = Caffeine.newBuilder()
+                .maximumSize(queriesMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.byPrice = Caffeine.newBuilder()
+                .maximumSize(queriesMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "cars.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, byColor, "cars.byColor");
+        CaffeineCacheMetrics.monitor(meterRegistry, byPrice, "cars.byPrice");
+    }
+
+    public Optional<Car> getById(long id, Function<Long, Optional<Car>> loader) {
+        // Отсутствующие id не кэшируем: Caffeine не сохраняет null
+        Car car = get(byId, id, () -> loader.apply(id).map(Car::copy).orElse(null));
+        return Optional.ofNullable(car).map(Car::copy);
+    }
+
+    public List<CarView> getByColor(String color, Supplier<List<CarView>> loader) {
+        return get(byColor, color.toLowerCase(Locale.ROOT), () -> List.copyOf(loader.get()));
+    }
+
+    public List<CarView> getByPrice(Double min, Double max, Supplier<List<CarView>> loader) {
+        return get(byPrice, new PriceRange(min, max), () -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Не Cache.get(key, loader): вычисляемые записи не видны при обходе asMap(),
+     * и диапазон цены, загрузка которого началась до коммита, пережил бы сброс и жил бы весь TTL.
+     * Поэтому загружаем сами, кладем результат и убираем его, если за время загрузки был сброс.
+     * Параллельные промахи по одному ключу теперь читают базу каждый сам
+     */
+    private <K, V> V get(Cache<K, V> cache, K key, Supplier<V> loader) {
+        V cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadGeneration = generation.get();
+        V loaded = loader.get();
+        if (loaded == null) {
+            return null;
+        }
+        cache.put(key, loaded);
+        if (generation.get() != loadGeneration) {
+            // Загрузка могла прочитать данные до изменения. Если сброс был позже put, он уже убрал запись сам
+            cache.asMap().remove(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Сбрасываем только записи, на которые могло повлиять изменение:
+     * id автомобиля, его старый и новый цвет и диапазоны, в которые попадает старая или новая цена.
+     * Вызывается после коммита, чтобы параллельный запрос не закэшировал незакоммиченные данные
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarChanged(CarChangedEvent event) {
+        evict(event.before());
+        evict(event.after());
+    }
+
+    /**
+     * Сбрасываем весь кэш: после изменений в обход CarChangedEvent (массовый импорт)
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        byId.invalidateAll();
+        byColor.invalidateAll();
+        byPrice.invalidateAll();
+        log.debug("Cache evicted for all cars");
+    }
+
+    private void evict(Car car) {
+        if (car == null) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        if (car.getId() != null) {
+            byId.invalidate(car.getId());
+        }
+        if (car.getColor() != null) {
+            byColor.invalidate(car.getColor().toLowerCase(Locale.ROOT));
+        }
+        byPrice.asMap().keySet().removeIf(range -> range.contains(car.getPrice()));
+        log.debug("Cache evicted for car {}", car.getId());
+    }
+
+    /**
+     * Диапазон цены включительно, null - граница не задана
+     */
+    record PriceRange(Double min, Double max) {
+        boolean contains(double price) {
+            return (min == null || price >= min) && (max == null || price <= max);
+        }
+    }
+}
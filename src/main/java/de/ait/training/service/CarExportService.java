@@ -0,0 +1,192 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Выгрузка всех машин потоком в CSV или NDJSON для аналитиков.
+ * Строки читаются серверным курсором JDBC (fetch-size строк за раз, в read-only транзакции)
+ * и сразу пишутся в ответ, объекты Car не создаются. Память не зависит от размера таблицы
+ */
+@Slf4j
+@Service
+public class CarExportService {
+    private static final String SELECT_CARS = """
+            SELECT id, color, model, price, year, engine_type, image_url, thumbnail_url, medium_url
+            FROM cars
+            ORDER BY id""";
+    // Колонки CSV называются как в /api/cars/import, поэтому выгрузку можно загрузить обратно
+    private static final String CSV_HEADER = "id,color,model,price,year,engine_type,image_url,thumbnail_url,medium_url\n";
+
+    // Имена полей NDJSON как у машины в JSON API, кодируются один раз
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString COLOR = new SerializedString("color");
+    private static final SerializableString MODEL = new SerializedString("model");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString YEAR = new SerializedString("year");
+    private static final SerializableString ENGINE_TYPE = new SerializedString("engineType");
+    private static final SerializableString IMAGE_URL = new SerializedString("imageUrl");
+    private static final SerializableString THUMBNAIL_URL = new SerializedString("thumbnailUrl");
+    private static final SerializableString MEDIUM_URL = new SerializedString("mediumUrl");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+
+    public CarExportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper,
+                            @Value("${app.cars.export.fetch-size:1000}") int fetchSize) {
+        // PostgreSQL читает курсором только при fetchSize > 0 и выключенном autocommit, то есть внутри транзакции
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Пишет все машины в out в формате CSV с заголовком. out не закрывается
+     */
+    public void exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+        long rows = export(resultSet -> {
+            writer.write(Long.toString(resultSet.getLong(1)));
+            writer.write(',');
+            writeCsvText(writer, resultSet.getString(2));
+            writer.write(',');
+            writeCsvText(writer, resultSet.getString(3));
+            writer.write(',');
+            writeCsvValue(writer, resultSet.getBigDecimal(4));
+            writer.write(',');
+            int year = resultSet.getInt(5);
+            writeCsvValue(writer, resultSet.wasNull() ? null : year);
+            for (int column = 6; column <= 9; column++) {
+                writer.write(',');
+                writeCsvText(writer, resultSet.getString(column));
+            }
+            writer.write('\n');
+        });
+        writer.flush();
+        log.info("Cars exported as CSV: {} rows", rows);
+    }
+
+    /**
+     * Пишет все машины в out по объекту JSON в строке. out не закрывается
+     */
+    public void exportNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // При ошибке на середине последняя строка должна остаться незакрытой, а не выглядеть целой
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            long rows = export(resultSet -> {
+                generator.writeStartObject();
+                generator.writeFieldName(ID);
+                generator.writeNumber(resultSet.getLong(1));
+                writeJsonText(generator, COLOR, resultSet.getString(2));
+                writeJsonText(generator, MODEL, resultSet.getString(3));
+                generator.writeFieldName(PRICE);
+                BigDecimal price = resultSet.getBigDecimal(4);
+                if (price == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(price);
+                }
+                generator.writeFieldName(YEAR);
+                int year = resultSet.getInt(5);
+                if (resultSet.wasNull()) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(year);
+                }
+                writeJsonText(generator, ENGINE_TYPE, resultSet.getString(6));
+                writeJsonText(generator, IMAGE_URL, resultSet.getString(7));
+                writeJsonText(generator, THUMBNAIL_URL, resultSet.getString(8));
+                writeJsonText(generator, MEDIUM_URL, resultSet.getString(9));
+                generator.writeEndObject();
+            });
+            if (rows > 0) {
+                generator.writeRaw('\n');
+            }
+            log.info("Cars exported as NDJSON: {} rows", rows);
+        }
+    }
+
+    /**
+     * @return сколько строк выгружено
+     */
+    private long export(RowWriter rowWriter) throws IOException {
+        try {
+            Long rows = readOnlyTransaction.execute(status -> {
+                long[] count = {0};
+                jdbcTemplate.query(SELECT_CARS, (RowCallbackHandler) resultSet -> {
+                    try {
+                        rowWriter.write(resultSet);
+                    } catch (IOException exception) {
+                        // Клиент отключился - дальше читать курсор незачем
+                        throw new UncheckedIOException(exception);
+                    }
+                    count[0]++;
+                });
+                return count[0];
+            });
+            return (rows == null) ? 0 : rows;
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    private static void writeCsvValue(Writer writer, Object value) throws IOException {
+        if (value instanceof BigDecimal decimal) {
+            writer.write(decimal.toPlainString());
+        } else if (value != null) {
+            writer.write(value.toString());
+        }
+    }
+
+    private static void writeCsvText(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeJsonText(JsonGenerator generator, SerializableString name, String value)
+            throws IOException {
+        generator.writeFieldName(name);
+        generator.writeString(value);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet resultSet) throws SQLException, IOException;
+    }
+}
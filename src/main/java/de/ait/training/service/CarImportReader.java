@@ -0,0 +1,273 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Читает файл импорта машин по строке: CSV с заголовком или NDJSON (по объекту в строке).
+ * Объекты Car не создаются - значения текущей строки лежат в одном массиве по колонкам Column,
+ * который переиспользуется для следующей строки
+ */
+abstract class CarImportReader implements Closeable {
+    private final String[] values = new String[Column.values().length];
+    private long row;
+    private String problem;
+
+    static CarImportReader csv(InputStream in) throws IOException {
+        return new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    static CarImportReader ndjson(InputStream in, JsonFactory jsonFactory) throws IOException {
+        return new NdjsonReader(jsonFactory.createParser(in));
+    }
+
+    /**
+     * Читает следующую строку
+     *
+     * @return false, если строки закончились
+     * @throws InvalidFileException если файл дальше не разобрать (сломанный JSON, незакрытые кавычки)
+     */
+    boolean next() throws IOException {
+        Arrays.fill(values, null);
+        problem = null;
+        if (!readRow()) {
+            return false;
+        }
+        row++;
+        return true;
+    }
+
+    /**
+     * @return номер текущей строки с данными, с 1 (заголовок CSV не считается)
+     */
+    long row() {
+        return row;
+    }
+
+    String get(Column column) {
+        return values[column.ordinal()];
+    }
+
+    void set(Column column, String value) {
+        values[column.ordinal()] = value;
+    }
+
+    /**
+     * @return почему строку нельзя импортировать, даже не проверяя значения, или null
+     */
+    String problem() {
+        return problem;
+    }
+
+    void reject(String reason) {
+        if (problem == null) {
+            problem = reason;
+        }
+    }
+
+    protected abstract boolean readRow() throws IOException;
+
+    /**
+     * Колонки импорта. В заголовке CSV и в полях JSON регистр и "_" не важны: engine_type = engineType
+     */
+    enum Column {
+        ID, COLOR, MODEL, PRICE, YEAR, ENGINE_TYPE;
+
+        static Column byName(String name) {
+            String normalized = name.trim().replace("_", "").toUpperCase(Locale.ROOT);
+            for (Column column : values()) {
+                if (column.name().replace("_", "").equals(normalized)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    static class InvalidFileException extends IOException {
+        InvalidFileException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * CSV по RFC 4180: разделитель запятая, значения в кавычках могут содержать запятые,
+     * переводы строк и "" вместо кавычки. Первая строка - заголовок, неизвестные колонки пропускаются
+     */
+    private static class CsvReader extends CarImportReader {
+        private final Reader reader;
+        private final char[] buffer = new char[64 * 1024];
+        private final StringBuilder field = new StringBuilder();
+        private final List<String> fields = new ArrayList<>();
+        private final Column[] header;
+        private int position;
+        private int limit;
+
+        CsvReader(Reader reader) throws IOException {
+            this.reader = reader;
+            if (!readRecord()) {
+                throw new InvalidFileException("CSV file is empty, header expected");
+            }
+            if (!fields.isEmpty() && fields.getFirst() != null && fields.getFirst().startsWith("\uFEFF")) {
+                fields.set(0, fields.getFirst().substring(1));
+            }
+
+            header = new Column[fields.size()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = (fields.get(i) == null) ? null : Column.byName(fields.get(i));
+            }
+            List<Column> columns = Arrays.asList(header);
+            if (!columns.containsAll(List.of(Column.COLOR, Column.MODEL, Column.PRICE, Column.YEAR))) {
+                throw new InvalidFileException("CSV header must contain color, model, price and year, got "
+                        + fields);
+            }
+        }
+
+        @Override
+        protected boolean readRow() throws IOException {
+            do {
+                if (!readRecord()) {
+                    return false;
+                }
+            } while (fields.size() == 1 && fields.getFirst() == null); // пустая строка
+
+            if (fields.size() > header.length) {
+                reject("Row has " + fields.size() + " values, header has " + header.length);
+            }
+            for (int i = 0; i < Math.min(fields.size(), header.length); i++) {
+                if (header[i] != null) {
+                    set(header[i], fields.get(i));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Читает одну запись в fields, пустое значение - null
+         *
+         * @return false в конце файла
+         */
+        private boolean readRecord() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+
+            boolean inQuotes = false;
+            boolean quoted = false;
+            while (true) {
+                if (inQuotes) {
+                    if (c == -1) {
+                        throw new InvalidFileException("Unterminated quoted value in CSV after row " + row());
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            inQuotes = false;
+                            continue; // c - первый символ после закрывающей кавычки
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && !quoted && field.isEmpty()) {
+                    inQuotes = true;
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(fieldValue());
+                    quoted = false;
+                } else if (c == '\n' || c == -1) {
+                    fields.add(fieldValue());
+                    return true;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private String fieldValue() {
+            String value = field.isEmpty() ? null : field.toString();
+            field.setLength(0);
+            return value;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * NDJSON: объекты JSON подряд (обычно по одному в строке), читаются потоковым парсером Jackson.
+     * Неизвестные поля пропускаются, вложенные объекты и массивы в известных полях - ошибка строки
+     */
+    private static class NdjsonReader extends CarImportReader {
+        private final JsonParser parser;
+
+        NdjsonReader(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        protected boolean readRow() throws IOException {
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    return false;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new InvalidFileException("Expected JSON object at row " + (row() + 1) + ", got " + token);
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    Column column = Column.byName(name);
+                    JsonToken value = parser.nextToken();
+                    if (value.isStructStart()) {
+                        parser.skipChildren();
+                        if (column != null) {
+                            reject(name + " must be a plain value");
+                        }
+                    } else if (column != null && value != JsonToken.VALUE_NULL) {
+                        set(column, parser.getText());
+                    }
+                }
+                return true;
+            } catch (JsonProcessingException exception) {
+                throw new InvalidFileException("Invalid JSON at row " + (row() + 1) + ": "
+                        + exception.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+}
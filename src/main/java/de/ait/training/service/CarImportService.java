@@ -0,0 +1,334 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.dto.CarImportResult;
+import de.ait.training.dto.CarImportResult.Reject;
+import de.ait.training.service.CarImportReader.Column;
+import de.ait.training.service.CarImportReader.InvalidFileException;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Массовый импорт машин из CSV или NDJSON (например, выгрузка склада на сотни тысяч машин).
+ * Файл читается потоком, каждая строка проверяется и сразу уходит в PostgreSQL через COPY FROM STDIN
+ * во временную таблицу car_import. Потом одним запросом строки с id существующих машин заменяют их,
+ * остальные добавляются как новые машины. Все в одной транзакции: если файл не удалось разобрать,
+ * не импортируется ничего. Некорректные строки пропускаются и попадают в rejects
+ */
+@Slf4j
+@Service
+public class CarImportService {
+    // Как allocationSize у cars_seq в Car: nextval выдает начало блока из 50 id (pooled-lo)
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final BigDecimal MAX_PRICE = new BigDecimal("9999999999.99"); // NUMERIC(12,2)
+    private static final int MIN_YEAR = 1886;
+    private static final int MAX_YEAR = 2100;
+
+    private static final String CREATE_STAGING_TABLE = """
+            CREATE TEMP TABLE car_import (
+                row_number  BIGINT,
+                id          BIGINT,
+                color       VARCHAR(255),
+                model       VARCHAR(255),
+                price       NUMERIC(12, 2),
+                year        INT,
+                engine_type VARCHAR(64)
+            ) ON COMMIT DROP""";
+    private static final String COPY_STAGING_TABLE =
+            "COPY car_import (row_number, id, color, model, price, year, engine_type) FROM STDIN (FORMAT csv)";
+    private static final String MERGE_STAGING_TABLE = """
+            WITH latest AS (
+                -- Если id встречается в файле несколько раз, берем последнюю строку
+                SELECT DISTINCT ON (id) * FROM car_import WHERE id IS NOT NULL ORDER BY id, row_number DESC
+            ),
+            updated AS (
+                UPDATE cars c
+                SET color = s.color, model = s.model, price = s.price, year = s.year, engine_type = s.engine_type,
+                    version = c.version + 1
+                FROM latest s
+                WHERE c.id = s.id
+                RETURNING c.id
+            ),
+            new_rows AS (
+                SELECT s.*, row_number() OVER (ORDER BY s.row_number) - 1 AS position
+                FROM (SELECT * FROM car_import WHERE id IS NULL
+                      UNION ALL
+                      SELECT * FROM latest l WHERE NOT EXISTS (SELECT 1 FROM cars c WHERE c.id = l.id)) s
+            ),
+            id_blocks AS (
+                SELECT block, nextval('cars_seq') AS first_id
+                FROM generate_series(0, (SELECT (count(*) + %1$d - 1) / %1$d - 1 FROM new_rows)) block
+            ),
+            inserted AS (
+                INSERT INTO cars (id, color, model, price, year, engine_type)
+                SELECT b.first_id + n.position %% %1$d, n.color, n.model, n.price, n.year, n.engine_type
+                FROM new_rows n
+                JOIN id_blocks b ON b.block = n.position / %1$d
+                RETURNING id
+            )
+            SELECT (SELECT count(*) FROM inserted), (SELECT count(*) FROM updated)""".formatted(ID_BLOCK_SIZE);
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final CarCache carCache;
+    private final CarAggregates carAggregates;
+    private final int maxReportedRejects;
+
+    public CarImportService(DataSource dataSource, ObjectMapper objectMapper, CarCache carCache,
+                            CarAggregates carAggregates,
+                            @Value("${app.cars.import.max-reported-rejects:100}") int maxReportedRejects) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.carCache = carCache;
+        this.carAggregates = carAggregates;
+        this.maxReportedRejects = maxReportedRejects;
+    }
+
+    /**
+     * @param body CSV с заголовком, колонки id (необязательно), color, model, price, year, engine_type
+     */
+    public CarImportResult importCsv(InputStream body) {
+        return importCars(() -> CarImportReader.csv(body));
+    }
+
+    /**
+     * @param body объекты JSON с полями как у машины, по одному в строке
+     */
+    public CarImportResult importNdjson(InputStream body) {
+        return importCars(() -> CarImportReader.ndjson(body, objectMapper.getFactory()));
+    }
+
+    private CarImportResult importCars(ReaderFactory readerFactory) {
+        long start = System.nanoTime();
+        ImportCounters counters = new ImportCounters();
+
+        try (Connection connection = dataSource.getConnection()) {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Car import requires PostgreSQL");
+            }
+
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(CREATE_STAGING_TABLE);
+                }
+                try (CarImportReader reader = readerFactory.open()) {
+                    copy(connection.unwrap(PGConnection.class), reader, counters);
+                }
+                merge(connection, counters);
+                CarTableVersion.increment(connection);
+                connection.commit();
+            } catch (InvalidFileException exception) {
+                connection.rollback();
+                log.warn("Car import stopped: {}", exception.getMessage());
+                return result(counters, 0, 0, start, exception.getMessage());
+            } catch (IOException | SQLException | RuntimeException exception) {
+                connection.rollback();
+                throw exception;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Car import failed", exception);
+        }
+
+        // Машины менялись в обход JPA и CarChangedEvent: какие записи кэша устарели - неизвестно,
+        // сводку пересобираем из базы
+        carCache.invalidateAll();
+        carAggregates.rebuild();
+        CarImportResult result = result(counters, counters.inserted, counters.updated, start, null);
+        log.info("Car import: {} rows, {} inserted, {} updated, {} rejected in {} ms ({} rows/s)",
+                result.rows(), result.inserted(), result.updated(), result.rejected(),
+                result.durationMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    // Проверенные строки сразу пишем в COPY в формате CSV, в памяти держим только буфер COPY
+    private void copy(PGConnection connection, CarImportReader reader, ImportCounters counters)
+            throws IOException, SQLException {
+        CopyIn copyIn = connection.getCopyAPI().copyIn(COPY_STAGING_TABLE);
+        try {
+            Writer out = new OutputStreamWriter(new PGCopyOutputStream(copyIn, COPY_BUFFER_SIZE),
+                    StandardCharsets.UTF_8);
+            while (reader.next()) {
+                counters.rows++;
+                String problem = validate(reader);
+                if (problem != null) {
+                    counters.reject(reader.row(), problem, maxReportedRejects);
+                    continue;
+                }
+                writeRow(out, reader);
+            }
+            out.close(); // завершает COPY
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void merge(Connection connection, ImportCounters counters) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(MERGE_STAGING_TABLE)) {
+            resultSet.next();
+            counters.inserted = resultSet.getLong(1);
+            counters.updated = resultSet.getLong(2);
+        }
+    }
+
+    /**
+     * Проверяет строку и приводит значения к виду для COPY (обрезанные пробелы, цена с двумя знаками)
+     *
+     * @return причина, по которой строку нельзя импортировать, или null
+     */
+    private static String validate(CarImportReader reader) {
+        if (reader.problem() != null) {
+            return reader.problem();
+        }
+
+        String id = reader.get(Column.ID);
+        if (id != null) {
+            try {
+                if (Long.parseLong(id.trim()) <= 0) {
+                    return "id must be positive";
+                }
+                reader.set(Column.ID, id.trim());
+            } catch (NumberFormatException exception) {
+                return "id must be a number";
+            }
+        }
+
+        for (Column column : List.of(Column.COLOR, Column.MODEL)) {
+            String value = (reader.get(column) == null) ? null : reader.get(column).trim();
+            if (value == null || value.isEmpty()) {
+                return column.name().toLowerCase(Locale.ROOT) + " is required";
+            }
+            if (value.length() > 255) {
+                return column.name().toLowerCase(Locale.ROOT) + " must not be longer than 255 characters";
+            }
+            reader.set(column, value);
+        }
+
+        String price = reader.get(Column.PRICE);
+        if (price == null) {
+            return "price is required";
+        }
+        try {
+            BigDecimal value = new BigDecimal(price.trim()).setScale(2, RoundingMode.HALF_UP);
+            if (value.signum() < 0 || value.compareTo(MAX_PRICE) > 0) {
+                return "price must be between 0 and " + MAX_PRICE;
+            }
+            reader.set(Column.PRICE, value.toPlainString());
+        } catch (NumberFormatException exception) {
+            return "price must be a number";
+        }
+
+        String year = reader.get(Column.YEAR);
+        if (year == null) {
+            return "year is required";
+        }
+        try {
+            int value = Integer.parseInt(year.trim());
+            if (value < MIN_YEAR || value > MAX_YEAR) {
+                return "year must be between " + MIN_YEAR + " and " + MAX_YEAR;
+            }
+            reader.set(Column.YEAR, Integer.toString(value));
+        } catch (NumberFormatException exception) {
+            return "year must be a whole number";
+        }
+
+        String engineType = reader.get(Column.ENGINE_TYPE);
+        if (engineType != null) {
+            engineType = engineType.trim();
+            if (engineType.length() > 64) {
+                return "engine_type must not be longer than 64 characters";
+            }
+            reader.set(Column.ENGINE_TYPE, engineType.isEmpty() ? null : engineType);
+        }
+        return null;
+    }
+
+    // Порядок колонок как в COPY_STAGING_TABLE. Пустое значение без кавычек - NULL, текст всегда в кавычках
+    private static void writeRow(Writer out, CarImportReader reader) throws IOException {
+        out.write(Long.toString(reader.row()));
+        out.write(',');
+        writeValue(out, reader.get(Column.ID));
+        out.write(',');
+        writeText(out, reader.get(Column.COLOR));
+        out.write(',');
+        writeText(out, reader.get(Column.MODEL));
+        out.write(',');
+        writeValue(out, reader.get(Column.PRICE));
+        out.write(',');
+        writeValue(out, reader.get(Column.YEAR));
+        out.write(',');
+        writeText(out, reader.get(Column.ENGINE_TYPE));
+        out.write('\n');
+    }
+
+    private static void writeValue(Writer out, String value) throws IOException {
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    private static void writeText(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        out.write('"');
+        out.write(value.indexOf('"') < 0 ? value : value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static CarImportResult result(ImportCounters counters, long inserted, long updated,
+                                          long start, String error) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        return new CarImportResult(counters.rows, inserted, updated, counters.rejected, counters.rejects,
+                elapsedNanos / 1_000_000, counters.rows * 1e9 / elapsedNanos, error);
+    }
+
+    @FunctionalInterface
+    private interface ReaderFactory {
+        CarImportReader open() throws IOException;
+    }
+
+    private static class ImportCounters {
+        private final List<Reject> rejects = new ArrayList<>();
+        private long rows;
+        private long rejected;
+        private long inserted;
+        private long updated;
+
+        void reject(long row, String error, int maxReported) {
+            rejected++;
+            if (rejects.size() < maxReported) {
+                rejects.add(new Reject(row, error));
+            }
+        }
+    }
+}
@@ -1,9 +1,59 @@
 package de.ait.training.service;
 
+import de.ait.training.dto.CarBatchResult;
+import de.ait.training.dto.CarPage;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarView;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarUpsertRepository.Upserted;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
 @Service
 public interface CarService {
     void attachImage(Long id, MultipartFile file);
+
+    Optional<Car> findById(long id);
+
+    List<CarView> findByColor(String color);
+
+    List<CarView> findByPriceRange(Double min, Double max);
+
+    Car createCar(Car car);
+
+    /**
+     * Заменяет машину с этим id или создает новую (под новым id), одним запросом к базе
+     *
+     * @param expectedVersion версия из If-Match или null
+     * @param mustExist       не создавать новую машину (If-Match: *)
+     * @return машина до и после, или пусто, если версия не совпала
+     */
+    Optional<Upserted> updateCar(long id, Car car, Long expectedVersion, boolean mustExist);
+
+    void deleteCar(long id);
+
+    // Пакетные операции: весь список - одна транзакция, индексы в результате - позиции в списке
+    List<CarBatchResult.Item> createCars(List<Car> cars);
+
+    List<CarBatchResult.Item> upsertCars(List<Car> cars);
+
+    List<CarBatchResult.Item> deleteCars(List<Long> ids);
+
+    CarPage getCarsPage(long afterId, int limit);
+
+    void forEachCar(long afterId, Consumer<CarView> action);
+
+    List<CarView> searchCars(CarSearchCriteria criteria, Sort sort, int limit);
+
+    // Нечеткий поиск по модели: совпадение начала, похожие названия с опечатками, лучшие первыми
+    List<CarView> searchCarsByModel(String query, int limit);
+
+    // Из сводки в памяти (CarAggregates), без запроса к таблице cars
+    CarStats getStats();
 }
@@ -1,62 +1,388 @@
 package de.ait.training.service;
 
+import de.ait.training.dto.CarBatchResult;
+import de.ait.training.dto.CarBatchResult.Status;
+import de.ait.training.dto.CarPage;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarView;
+import de.ait.training.event.CarChangedEvent;
 import de.ait.training.model.Car;
 import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarSpecifications;
+import de.ait.training.repository.CarUpsertRepository.Upserted;
+import de.ait.training.repository.ImageBlobRepository;
+import de.ait.training.service.ImageStorage.StagedImage;
 
-import jakarta.transaction.Transactional;
+import de.ait.training.util.CarCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.util.UUID;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class CarServiceImpl implements CarService {
     private final CarRepository repositiry;
-    private final String uploadDirName;
+    private final ImageStorage imageStorage;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ImageVariantService imageVariantService;
     private final String hostUrl;
+    private final int streamBatchSize;
+    private final CarCache carCache;
+    private final CarAggregates carAggregates;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryRead;
+    private final Timer imageStageTimer;
+    private final Timer imageCommitTimer;
 
     public CarServiceImpl(
             CarRepository repositiry,
-            @Value("${upload.dir}") String uploadDirName,
-            @Value("${host.url}")  String hostUrl
+            ImageStorage imageStorage,
+            ImageBlobRepository imageBlobRepository,
+            ImageVariantService imageVariantService,
+            @Value("${host.url}")  String hostUrl,
+            @Value("${app.cars.stream.batch-size:500}") int streamBatchSize,
+            CarCache carCache,
+            CarAggregates carAggregates,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
     ) {
         this.repositiry = repositiry;
-        this.uploadDirName = uploadDirName;
+        this.imageStorage = imageStorage;
+        this.imageBlobRepository = imageBlobRepository;
+        this.imageVariantService = imageVariantService;
         this.hostUrl = hostUrl;
+        this.streamBatchSize = streamBatchSize;
+        this.carCache = carCache;
+        this.carAggregates = carAggregates;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        // stage - запись потока во временный файл с подсчетом SHA-256, commit - перенос в хранилище
+        this.imageStageTimer = imageWriteTimer(meterRegistry, "stage");
+        this.imageCommitTimer = imageWriteTimer(meterRegistry, "commit");
+    }
+
+    private static Timer imageWriteTimer(MeterRegistry meterRegistry, String step) {
+        return Timer.builder("images.write")
+                .description("Writing an uploaded car image to disk")
+                .tag("step", step)
+                .register(meterRegistry);
     }
 
     @Override
     @Transactional
     public void attachImage(Long id, MultipartFile file) {
-        File uploadDir = new File(uploadDirName);
-        uploadDir.mkdirs();
-
-        String uniqueFileName = generateUniqueFileName(file);
-        File targetFile = new File(uploadDir, uniqueFileName);
-
-        try (FileOutputStream out = new FileOutputStream(targetFile)) {
-            out.write(file.getBytes());
-        } catch (Exception exception) {
-            throw new RuntimeException(exception);
-        }
-
-        // Чтобы получить загруженную картинку обратно, клиент отправляет запрос:
-        // GET -> http://localhost:8080/77936a2c-5c09-4914-aa6c-f8a84f9ac955-bmw-x5-black.jpg
+        // Проверяем машину до записи файла, чтобы не оставлять на диске картинки без владельца
         Car car = repositiry.findById(id).orElseThrow(
                 // По хорошему здесь нужно выбрасывать пользовательский эксепшен
                 // и обрабатывать его в глобальном обработчике эксепшенов
                 () -> new IllegalArgumentException("Car with id " + id + " not found")
         );
-        car.setImageUrl(hostUrl + uniqueFileName);
+
+        // Файл пишется потоком во временный файл и сохраняется под хэшем содержимого.
+        // Ссылку на файл учитываем в image_blobs до переноса: блокировка строки не дает
+        // сборщику мусора удалить уже существующий такой же файл
+        StagedImage staged = imageStageTimer.record(() -> imageStorage.stage(file));
+        String fileName;
+        try {
+            imageBlobRepository.insertIfAbsent(staged.hash(), staged.fileName(), staged.size());
+            imageBlobRepository.acquire(staged.hash(), Instant.now());
+            fileName = imageCommitTimer.record(() -> imageStorage.commit(staged));
+        } finally {
+            imageStorage.discard(staged);
+        }
+        releaseImage(car.getImageHash());
+
+        // Уменьшенные копии генерируются в фоне после коммита, запрос их не ждет.
+        // При откате файл не удаляем: он может быть общим, ненужные файлы убирает ImageGarbageCollector
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                imageVariantService.generateVariants(id, fileName);
+            }
+        });
+
+        // Чтобы получить загруженную картинку обратно, клиент отправляет запрос:
+        // GET -> http://localhost:8080/9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg
+        Car before = car.copy();
+        car.setImageUrl(hostUrl + fileName);
+        car.setImageHash(staged.hash());
+        car.setThumbnailUrl(null);
+        car.setMediumUrl(null);
+        eventPublisher.publishEvent(new CarChangedEvent(before, car.copy()));
+    }
+
+    // Промахи кэша читаются из основной базы (read-write транзакция): строка с реплики может отставать
+    // до max-lag, а в кэше прожила бы весь TTL, и PUT с If-Match по ее версии получал бы 412.
+    // Попадания в кэш транзакцию не открывают
+    @Override
+    public Optional<Car> findById(long id) {
+        return carCache.getById(id, carId -> primaryRead.execute(status -> repositiry.findById(carId)));
+    }
+
+    @Override
+    public List<CarView> findByColor(String color) {
+        return carCache.getByColor(color, () -> primaryRead.execute(status ->
+                repositiry.findCarByColorIgnoreCase(color, CarView.class)));
+    }
+
+    @Override
+    public List<CarView> findByPriceRange(Double min, Double max) {
+        return carCache.getByPrice(min, max, () -> primaryRead.execute(status -> {
+            if (min == null && max == null) {
+                return repositiry.findAllBy(CarView.class);
+            } else if (min == null) {
+                return repositiry.findCarByPriceLessThanEqual(max, CarView.class);
+            } else if (max == null) {
+                return repositiry.findCarByPriceGreaterThanEqual(min, CarView.class);
+            }
+            return repositiry.findCarByPriceBetween(min, max, CarView.class);
+        }));
     }
 
-    private String generateUniqueFileName(MultipartFile file) {
-        String origFileName = file.getOriginalFilename();
-        String randomUuid = UUID.randomUUID().toString();
+    @Override
+    @Transactional
+    public Car createCar(Car car) {
+        car.setId(null);
+        car.setVersion(null);
+        repositiry.save(car);
+        eventPublisher.publishEvent(new CarChangedEvent(null, car.copy()));
+        return car;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Upserted> updateCar(long id, Car car, Long expectedVersion, boolean mustExist) {
+        String error = validate(car);
+        if (error != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+        }
+
+        Optional<Upserted> upserted = repositiry.upsert(id, car, expectedVersion, mustExist);
+        upserted.ifPresent(result -> {
+            Car before = result.before();
+            if (before != null && !Objects.equals(before.getImageHash(), result.after().getImageHash())) {
+                releaseImage(before.getImageHash());
+            }
+            eventPublisher.publishEvent(new CarChangedEvent(before, result.after().copy()));
+        });
+        return upserted;
+    }
+
+    @Override
+    @Transactional
+    public void deleteCar(long id) {
+        repositiry.findById(id).ifPresent(car -> {
+            repositiry.delete(car);
+            releaseImage(car.getImageHash());
+            eventPublisher.publishEvent(new CarChangedEvent(car.copy(), null));
+        });
+    }
+
+    @Override
+    @Transactional
+    public List<CarBatchResult.Item> createCars(List<Car> cars) {
+        List<CarBatchResult.Item> results = new ArrayList<>(cars.size());
+        List<Car> created = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            String error = validate(car);
+            if (error == null) {
+                car.setId(null);
+                car.setImageHash(null);
+                car.setVersion(null);
+                created.add(car);
+            }
+            results.add(new CarBatchResult.Item(results.size(), null, Status.FAILED, error));
+        }
+
+        // id берутся из cars_seq блоками, поэтому Hibernate отправляет INSERT пачками (hibernate.jdbc.batch_size)
+        repositiry.saveAll(created);
+        repositiry.flush();
+
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            if (results.get(i).error() == null) {
+                results.set(i, new CarBatchResult.Item(i, car.getId(), Status.CREATED, null));
+                eventPublisher.publishEvent(new CarChangedEvent(null, car.copy()));
+            }
+        }
+        return results;
+    }
 
-        return randomUuid + "-" +  origFileName;
+    @Override
+    @Transactional
+    public List<CarBatchResult.Item> upsertCars(List<Car> cars) {
+        // Существующие машины читаем одним запросом, а не по одной
+        Map<Long, Car> existing = repositiry.findAllById(cars.stream()
+                        .filter(Objects::nonNull)
+                        .map(Car::getId)
+                        .filter(Objects::nonNull)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Car::getId, Function.identity()));
+
+        List<CarBatchResult.Item> results = new ArrayList<>(cars.size());
+        List<Car> befores = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            String error = validate(car);
+            Car found = (error == null && car.getId() != null) ? existing.get(car.getId()) : null;
+            Car before = null;
+            if (error == null && found != null) {
+                before = found.copy();
+                keepOrReleaseImage(car, before);
+                if (car.getVersion() == null) {
+                    // Версию не прислали - заменяем без проверки. Присланную сверит Hibernate при merge
+                    car.setVersion(found.getVersion());
+                }
+            } else if (error == null) {
+                // Как PUT: неизвестный id - создаем новую машину
+                car.setId(null);
+                car.setImageHash(null);
+                car.setVersion(null);
+            }
+            befores.add(before);
+            results.add(new CarBatchResult.Item(results.size(), null, Status.FAILED, error));
+        }
+
+        List<Car> saved = new ArrayList<>(cars.size());
+        for (int i = 0; i < cars.size(); i++) {
+            // merge существующей машины берет ее из контекста, без повторного SELECT
+            saved.add(results.get(i).error() == null ? repositiry.save(cars.get(i)) : null);
+        }
+        repositiry.flush();
+
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = saved.get(i);
+            if (car != null) {
+                Status status = (befores.get(i) == null) ? Status.CREATED : Status.UPDATED;
+                results.set(i, new CarBatchResult.Item(i, car.getId(), status, null));
+                eventPublisher.publishEvent(new CarChangedEvent(befores.get(i), car.copy()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public List<CarBatchResult.Item> deleteCars(List<Long> ids) {
+        Map<Long, Car> existing = repositiry.findAllById(ids.stream().filter(Objects::nonNull).toList())
+                .stream()
+                .collect(Collectors.toMap(Car::getId, Function.identity()));
+
+        // Один DELETE на всю пачку
+        repositiry.deleteAllInBatch(existing.values());
+
+        List<CarBatchResult.Item> results = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Car car = (id == null) ? null : existing.remove(id);
+            if (car == null) {
+                results.add(new CarBatchResult.Item(results.size(), id, Status.NOT_FOUND, null));
+                continue;
+            }
+            releaseImage(car.getImageHash());
+            eventPublisher.publishEvent(new CarChangedEvent(car.copy(), null));
+            results.add(new CarBatchResult.Item(results.size(), id, Status.DELETED, null));
+        }
+        return results;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CarPage getCarsPage(long afterId, int limit) {
+        // Берем на одну запись больше, чтобы понять, есть ли следующая страница
+        List<CarView> cars = repositiry.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit + 1), CarView.class);
+        if (cars.size() <= limit) {
+            return new CarPage(cars, null);
+        }
+
+        List<CarView> page = cars.subList(0, limit);
+        return new CarPage(page, CarCursor.encode(page.getLast().id()));
+    }
+
+    @Override
+    public void forEachCar(long afterId, Consumer<CarView> action) {
+        // Без общей транзакции: медленный клиент не должен держать соединение с базой весь ответ,
+        // каждая порция читается в своей короткой read-only транзакции (с реплики, если они настроены).
+        // Свою транзакцию методу запроса репозиторий не открывает, readOnly есть только у методов CRUD.
+        // CarView не попадают в контекст персистентности, поэтому память не растет до конца запроса
+        long lastId = afterId;
+        List<CarView> batch;
+        do {
+            long fromId = lastId;
+            batch = readOnlyTransaction.execute(status ->
+                    repositiry.findByIdGreaterThanOrderByIdAsc(fromId, Limit.of(streamBatchSize), CarView.class));
+            batch.forEach(action);
+            if (!batch.isEmpty()) {
+                lastId = batch.getLast().id();
+            }
+        } while (batch.size() == streamBatchSize);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<CarView> searchCars(CarSearchCriteria criteria, Sort sort, int limit) {
+        // findBy с limit не делает лишний count-запрос, в отличие от findAll(spec, pageable)
+        return repositiry.findBy(CarSpecifications.matching(criteria),
+                query -> query.as(CarView.class).sortBy(sort).limit(limit).all());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<CarView> searchCarsByModel(String query, int limit) {
+        return repositiry.searchByModel(query, limit);
+    }
+
+    @Override
+    public CarStats getStats() {
+        return carAggregates.getStats();
+    }
+
+    // Колонки color и model NOT NULL: такие машины не отправляем в базу, чтобы не откатывать всю пачку
+    private static String validate(Car car) {
+        if (car == null || car.getColor() == null || car.getModel() == null) {
+            return "color and model are required";
+        }
+        return null;
+    }
+
+    // Хэш картинки клиент не присылает: та же ссылка - та же картинка, иначе старая больше не нужна
+    private void keepOrReleaseImage(Car car, Car before) {
+        if (Objects.equals(car.getImageUrl(), before.getImageUrl())) {
+            car.setImageHash(before.getImageHash());
+        } else {
+            releaseImage(before.getImageHash());
+        }
+    }
+
+    // Файл удалит ImageGarbageCollector, когда на него не останется ссылок
+    private void releaseImage(String imageHash) {
+        if (imageHash != null) {
+            imageBlobRepository.release(imageHash, Instant.now());
+        }
     }
 }
@@ -0,0 +1,100 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версия таблицы cars - счетчик в table_versions, из него строятся ETag списков машин.
+ * Пока версия не изменилась, списки те же, и на If-None-Match можно ответить 304, не выполняя запрос списка.
+ * Счетчик увеличивается один раз на пишущую транзакцию перед коммитом, в той же транзакции,
+ * поэтому новая версия становится видна вместе с изменениями. Запись в обход приложения
+ * (SQL вручную) версию не меняет - как и кэш CarCache, такие изменения клиенты увидят только после следующей записи
+ */
+@Component
+public class CarTableVersion {
+    private static final String SELECT_VERSION = "SELECT version FROM table_versions WHERE table_name = 'cars'";
+    private static final String INCREMENT = "UPDATE table_versions SET version = version + 1 WHERE table_name = 'cars'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public CarTableVersion(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Read-only транзакция: версия читается оттуда же, откуда списки (с реплики),
+        // а не из основной базы, которая может опережать реплику
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Текущая версия. В уже открытой транзакции читается в ней (CarAggregates берет версию
+     * в одном снимке со сводкой)
+     */
+    public long current() {
+        Long version = readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject(SELECT_VERSION, Long.class));
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Увеличивает версию для изменений через JDBC-соединение в обход JPA (импорт через COPY).
+     * Вызывать в транзакции этого соединения
+     */
+    public static void increment(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(INCREMENT);
+        }
+    }
+
+    /**
+     * Версия, которую записала текущая транзакция. Известна после beforeCommit, то есть в слушателях
+     * после коммита (@TransactionalEventListener); вне транзакции или до коммита - пусто
+     */
+    public OptionalLong committedVersion() {
+        Object written = TransactionSynchronizationManager.getResource(this);
+        if (written instanceof AtomicLong version && version.get() >= 0) {
+            return OptionalLong.of(version.get());
+        }
+        return OptionalLong.empty();
+    }
+
+    // Не @TransactionalEventListener(BEFORE_COMMIT): он сработал бы на каждую машину пакетной операции
+    @EventListener
+    public void onCarChanged(CarChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            jdbcTemplate.update(INCREMENT);
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+
+        AtomicLong written = new AtomicLong(-1);
+        TransactionSynchronizationManager.bindResource(this, written);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            // Строка table_versions заблокирована до коммита, поэтому прочитанная версия - наша
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                jdbcTemplate.update(INCREMENT);
+                written.set(jdbcTemplate.queryForObject(SELECT_VERSION, Long.class));
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CarTableVersion.this);
+            }
+        });
+    }
+}
@@ -0,0 +1,200 @@
+package de.ait.training.service;
+
+import de.ait.training.util.WorkerThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь отправки писем с ограниченным пулом воркеров.
+ * Воркер забирает из очереди пачку писем и отправляет ее одним вызовом
+ * JavaMailSender.send(MimeMessage...), т.е. через одно SMTP-соединение на всю пачку.
+ * Неотправленные письма повторяются с экспоненциальной задержкой.
+ * Метрики: mail.queue.depth, mail.send (время SMTP-сессии), mail.sent, mail.retried, mail.failed
+ */
+@Slf4j
+@Component
+public class EmailDispatcher {
+    private final JavaMailSender mailSender;
+    private final BlockingQueue<PendingEmail> queue;
+    private final int workers;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final ThreadFactory workerThreadFactory;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final Timer sendTimer;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+
+    public EmailDispatcher(
+            JavaMailSender mailSender,
+            MeterRegistry meterRegistry,
+            @Value("${app.mail.dispatch.queue-capacity:1000}") int queueCapacity,
+            @Value("${app.mail.dispatch.workers:2}") int workers,
+            @Value("${app.mail.dispatch.batch-size:20}") int batchSize,
+            @Value("${app.mail.dispatch.max-attempts:3}") int maxAttempts,
+            @Value("${app.mail.dispatch.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.mailSender = mailSender;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.workerThreadFactory = WorkerThreads.factory("mail-dispatch-", virtualThreads);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerThreads.factory("mail-retry-", virtualThreads));
+
+        Gauge.builder("mail.queue.depth", queue, BlockingQueue::size)
+                .description("Emails waiting to be sent")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.send")
+                .description("Time of one SMTP session (one batch of emails)")
+                .register(meterRegistry);
+        this.sentCounter = meterRegistry.counter("mail.sent");
+        this.retriedCounter = meterRegistry.counter("mail.retried");
+        this.failedCounter = meterRegistry.counter("mail.failed");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = workerThreadFactory.newThread(this::drainQueue);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+        retryScheduler.shutdownNow();
+        if (!queue.isEmpty()) {
+            log.warn("Mail dispatcher stopped with {} emails in queue", queue.size());
+        }
+    }
+
+    /**
+     * Ставит письмо в очередь и сразу возвращает управление
+     *
+     * @return future, которое завершится после отправки или после последней неудачной попытки
+     * @throws RejectedExecutionException если очередь заполнена
+     */
+    public CompletableFuture<Void> submit(MimeMessage message) {
+        PendingEmail email = new PendingEmail(message, 1, new CompletableFuture<>());
+        if (!queue.offer(email)) {
+            throw new RejectedExecutionException("Mail queue is full (" + queue.size() + ")");
+        }
+        return email.result();
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void drainQueue() {
+        List<PendingEmail> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                sendBatch(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException exception) {
+                log.error("Mail worker failed", exception);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingEmail> batch) {
+        MimeMessage[] messages = batch.stream().map(PendingEmail::message).toArray(MimeMessage[]::new);
+        Timer.Sample sample = Timer.start();
+        try {
+            mailSender.send(messages);
+            batch.forEach(this::complete);
+        } catch (MailSendException exception) {
+            // В failedMessages только письма, которые сервер не принял, остальные уже ушли
+            Map<Object, Exception> failed = exception.getFailedMessages();
+            for (PendingEmail email : batch) {
+                if (failed.isEmpty() || failed.containsKey(email.message())) {
+                    retryOrFail(email, exception);
+                } else {
+                    complete(email);
+                }
+            }
+        } catch (MailException exception) {
+            batch.forEach(email -> retryOrFail(email, exception));
+        } finally {
+            sample.stop(sendTimer);
+        }
+    }
+
+    private void complete(PendingEmail email) {
+        sentCounter.increment();
+        email.result().complete(null);
+    }
+
+    private void retryOrFail(PendingEmail email, Exception cause) {
+        if (email.attempt() >= maxAttempts || !running) {
+            log.error("Email sending failed after {} attempts", email.attempt(), cause);
+            failedCounter.increment();
+            email.result().completeExceptionally(cause);
+            return;
+        }
+
+        // 1s, 2s, 4s ... от initialBackoff
+        long delayMillis = initialBackoff.toMillis() << (email.attempt() - 1);
+        log.warn("Email sending failed (attempt {}), retry in {} ms: {}",
+                email.attempt(), delayMillis, cause.getMessage());
+        retriedCounter.increment();
+        PendingEmail retry = new PendingEmail(email.message(), email.attempt() + 1, email.result());
+        retryScheduler.schedule(() -> {
+            if (!queue.offer(retry)) {
+                failedCounter.increment();
+                retry.result().completeExceptionally(
+                        new RejectedExecutionException("Mail queue is full, retry dropped"));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private record PendingEmail(MimeMessage message, int attempt, CompletableFuture<Void> result) {
+    }
+}
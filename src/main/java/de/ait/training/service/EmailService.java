@@ -1,10 +1,14 @@
 package de.ait.training.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
@@ -12,7 +16,10 @@ import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
@@ -20,6 +27,8 @@ import java.util.Map;
 public class EmailService {
     private final JavaMailSender mailSender;
     private final TemplateEngine templateEngine;
+    private final EmailDispatcher emailDispatcher;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.mail.from.adress}")
     private String fromAddress;
@@ -27,27 +36,31 @@ public class EmailService {
     @Value("${app.mail.from.personal}")
     private String fromName;
 
+    @Value("${app.mail.templates.warm-up:}")
+    private List<String> warmUpTemplates;
+
+    /**
+     * Разбираем шаблоны писем при старте, чтобы первое письмо не платило за парсинг.
+     * Разобранный шаблон хранится в кэше Thymeleaf (spring.thymeleaf.cache=true)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpTemplates() {
+        for (String template : warmUpTemplates) {
+            long start = System.nanoTime();
+            templateEngine.process(template, new Context());
+            log.info("Email template {} warmed up in {} ms", template, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
     public void sendTemplateEmail(String to, String subject,
                                   String template, Map<String, Object> variables) {
+        // Рендер шаблона и SMTP-сессия, запрос ждет оба
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
         try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = null;
-
-            helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                    StandardCharsets.UTF_8.name());
-
-
-            helper.setFrom(fromAddress);
-            helper.setTo(to);
-            helper.setSubject(subject);
-
-            Context context = new Context();
-            context.setVariables(variables);
-
-            String html = templateEngine.process(template, context);
-            helper.setText(html, true);
-
+            MimeMessage mimeMessage = createTemplateEmail(to, subject, template, variables);
             mailSender.send(mimeMessage);
+            outcome = "success";
 
             log.info("Sent email to {} with subject {}", to, subject);
         } catch (MessagingException exception) {
@@ -56,7 +69,85 @@ public class EmailService {
         } catch (Exception exception) {
             log.error(exception.getMessage(), exception);
             throw new RuntimeException("Unexpected failed " + exception);
+        } finally {
+            sample.stop(Timer.builder("mail.template.send")
+                    .description("Rendering and sending one template email in the request thread")
+                    .tag("template", template)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
         }
 
     }
+
+    /**
+     * Письмо рендерится сразу, а отправляется воркером EmailDispatcher
+     *
+     * @return future, которое завершится после отправки письма
+     * @throws java.util.concurrent.RejectedExecutionException если очередь отправки заполнена
+     */
+    public CompletableFuture<Void> queueTemplateEmail(String to, String subject,
+                                                      String template, Map<String, Object> variables) {
+        MimeMessage mimeMessage;
+        try {
+            mimeMessage = createTemplateEmail(to, subject, template, variables);
+        } catch (MessagingException exception) {
+            log.error(exception.getMessage(), exception);
+            throw new RuntimeException("Email creating failed " + exception);
+        }
+
+        log.info("Queued email to {} with subject {}", to, subject);
+        return emailDispatcher.submit(mimeMessage)
+                .whenComplete((ignored, exception) -> {
+                    if (exception == null) {
+                        log.info("Sent email to {} with subject {}", to, subject);
+                    }
+                });
+    }
+
+    /**
+     * Рендерим шаблон один раз для всей рассылки, персональные переменные
+     * подставляются потом для каждого получателя в queuePreparedEmail
+     *
+     * @param campaignVariables  переменные, общие для всех писем
+     * @param recipientVariables имена персональных переменных
+     */
+    public PreparedEmailTemplate prepareTemplate(String template, Map<String, Object> campaignVariables,
+                                                 Set<String> recipientVariables) {
+        return PreparedEmailTemplate.prepare(templateEngine, template, campaignVariables, recipientVariables);
+    }
+
+    public CompletableFuture<Void> queuePreparedEmail(String to, String subject,
+                                                      PreparedEmailTemplate template,
+                                                      Map<String, ?> recipientVariables) {
+        MimeMessage mimeMessage;
+        try {
+            mimeMessage = createHtmlEmail(to, subject, template.render(recipientVariables));
+        } catch (MessagingException exception) {
+            log.error(exception.getMessage(), exception);
+            throw new RuntimeException("Email creating failed " + exception);
+        }
+        return emailDispatcher.submit(mimeMessage);
+    }
+
+    private MimeMessage createTemplateEmail(String to, String subject,
+                                            String template, Map<String, Object> variables)
+            throws MessagingException {
+        Context context = new Context();
+        context.setVariables(variables);
+
+        String html = templateEngine.process(template, context);
+        return createHtmlEmail(to, subject, html);
+    }
+
+    private MimeMessage createHtmlEmail(String to, String subject, String html) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
+                StandardCharsets.UTF_8.name());
+
+        helper.setFrom(fromAddress);
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(html, true);
+        return mimeMessage;
+    }
 }
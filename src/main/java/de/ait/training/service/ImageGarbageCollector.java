@@ -0,0 +1,84 @@
+package de.ait.training.service;
+
+import de.ait.training.model.ImageBlob;
+import de.ait.training.repository.ImageBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Удаляет в фоне файлы картинок, на которые больше не ссылается ни одна машина
+ * (машину удалили или ей загрузили другую картинку).
+ * Файл удаляется только через grace-period после последнего изменения счетчика ссылок,
+ * а файлы без строки в image_blobs (например, после отката attachImage) - через grace-period после записи
+ */
+@Slf4j
+@Component
+public class ImageGarbageCollector {
+    private final ImageBlobRepository imageBlobRepository;
+    private final ImageStorage imageStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gracePeriod;
+    private final int batchSize;
+
+    public ImageGarbageCollector(
+            ImageBlobRepository imageBlobRepository,
+            ImageStorage imageStorage,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.images.gc.grace-period:1h}") Duration gracePeriod,
+            @Value("${app.images.gc.batch-size:100}") int batchSize
+    ) {
+        this.imageBlobRepository = imageBlobRepository;
+        this.imageStorage = imageStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${app.images.gc.initial-delay:5m}",
+            fixedDelayString = "${app.images.gc.interval:1h}")
+    public void collect() {
+        Instant before = Instant.now().minus(gracePeriod);
+
+        int deletedBlobs = 0;
+        List<String> hashes;
+        do {
+            hashes = imageBlobRepository.findUnreferenced(before, Limit.of(batchSize));
+            for (String hash : hashes) {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> deleteIfUnreferenced(hash, before)))) {
+                    deletedBlobs++;
+                }
+            }
+        } while (hashes.size() == batchSize);
+
+        int deletedOrphans = 0;
+        for (String hash : imageStorage.findBlobHashes(before)) {
+            if (!imageBlobRepository.existsById(hash)) {
+                imageStorage.deleteBlob(hash);
+                deletedOrphans++;
+            }
+        }
+
+        log.info("Image GC: {} unreferenced and {} orphan images deleted", deletedBlobs, deletedOrphans);
+    }
+
+    // Строка заблокирована до коммита: attachImage с той же картинкой дождется удаления и запишет файл заново
+    private boolean deleteIfUnreferenced(String hash, Instant before) {
+        ImageBlob blob = imageBlobRepository.lockByHash(hash).orElse(null);
+        if (blob == null || blob.getRefCount() > 0 || !blob.getUpdatedAt().isBefore(before)) {
+            return false;
+        }
+
+        imageStorage.deleteBlob(hash);
+        imageBlobRepository.delete(blob);
+        return true;
+    }
+}
@@ -0,0 +1,316 @@
+package de.ait.training.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Сохраняет загруженные картинки на диск потоком, не держа файл целиком в памяти.
+ * Файл пишется во временный файл в той же папке и атомарно переименовывается,
+ * поэтому по адресу картинки никогда не бывает недописанного файла.
+ * Имя файла - SHA-256 содержимого, поэтому одна и та же картинка у многих машин
+ * хранится на диске один раз (учет ссылок - таблица image_blobs)
+ */
+@Slf4j
+@Component
+public class ImageStorage {
+    private static final int HEADER_SIZE = 12;
+    private static final long TRANSFER_CHUNK = 256 * 1024;
+    // <sha256>.<ext> и уменьшенные копии <sha256>-<вариант>.<ext>
+    private static final Pattern BLOB_FILE = Pattern.compile("([0-9a-f]{64})(-[a-z]+)?\\.[a-z]+");
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private final Path uploadDir;
+    private final long maxImageBytes;
+    // Хэш содержимого считается один раз на файл, пока не изменились размер и дата файла
+    private final Cache<String, StoredImage> storedImages = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    public ImageStorage(
+            @Value("${upload.dir}") String uploadDirName,
+            @Value("${app.upload.max-image-size:20MB}") DataSize maxImageSize
+    ) {
+        this.uploadDir = Path.of(uploadDirName).toAbsolutePath().normalize();
+        this.maxImageBytes = maxImageSize.toBytes();
+    }
+
+    public Path getUploadDir() {
+        return uploadDir;
+    }
+
+    /**
+     * Записывает загруженный файл во временный файл в папке загрузок и считает SHA-256 содержимого.
+     * В хранилище файл попадает только после commit, до этого его можно отменить через discard
+     *
+     * @throws ResponseStatusException 415, если это не картинка, 413, если файл больше лимита
+     */
+    public StagedImage stage(MultipartFile file) {
+        if (file.getSize() > maxImageBytes) {
+            throw tooLarge();
+        }
+
+        Path tempFile = null;
+        try {
+            Files.createDirectories(uploadDir);
+            tempFile = Files.createTempFile(uploadDir, "upload-", ".tmp");
+            if (POSIX) {
+                // createTempFile создает файл с правами 600, а картинки должны читаться как раньше
+                Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-r--r--"));
+            }
+
+            MessageDigest digest = sha256Digest();
+            ImageType type;
+            long written = 0;
+            // Хэш считается по ходу копирования, второй раз файл не читаем
+            try (InputStream in = new BufferedInputStream(
+                    new DigestInputStream(file.getInputStream(), digest), HEADER_SIZE * 4);
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                type = detectType(in);
+                if (type == null) {
+                    throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                            "Only JPEG, PNG, GIF and WEBP images are allowed");
+                }
+
+                // Копируем порциями через канал и считаем байты: клиент мог соврать о размере
+                long transferred;
+                while ((transferred = target.transferFrom(source, written, TRANSFER_CHUNK)) > 0) {
+                    written += transferred;
+                    if (written > maxImageBytes) {
+                        throw tooLarge();
+                    }
+                }
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            StagedImage staged = new StagedImage(tempFile, hash, hash + "." + type.extension, written);
+            tempFile = null;
+            return staged;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Переносит файл в хранилище под именем &lt;sha256&gt;.&lt;расширение&gt;.
+     * Если такой файл уже есть, временный удаляется - одинаковые картинки хранятся один раз.
+     * Вызывать, держа блокировку строки image_blobs (ImageBlobRepository.acquire),
+     * иначе сборщик мусора может удалить существующий файл одновременно с повторным использованием
+     *
+     * @return имя файла в папке загрузок
+     */
+    public String commit(StagedImage staged) {
+        Path target = uploadDir.resolve(staged.fileName());
+        try {
+            if (Files.exists(target)) {
+                // Свежая дата, чтобы сборщик не считал файл давно брошенным
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                Files.delete(staged.tempFile());
+            } else {
+                Files.move(staged.tempFile(), target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return staged.fileName();
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public void discard(StagedImage staged) {
+        deleteQuietly(staged.tempFile());
+    }
+
+    /**
+     * Удаляет файл картинки и все ее уменьшенные копии (&lt;sha256&gt;-thumb.jpg и т.п.)
+     */
+    public void deleteBlob(String hash) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDir, hash + "*")) {
+            for (Path path : files) {
+                storedImages.invalidate(path.getFileName().toString());
+                deleteQuietly(path);
+            }
+        } catch (NoSuchFileException exception) {
+            // Папки еще нет - удалять нечего
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * @return хэши картинок, файлы которых не менялись с момента before
+     */
+    public Set<String> findBlobHashes(Instant before) {
+        Set<String> hashes = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDir)) {
+            for (Path path : files) {
+                Matcher matcher = BLOB_FILE.matcher(path.getFileName().toString());
+                if (matcher.matches() && Files.getLastModifiedTime(path).toInstant().isBefore(before)) {
+                    hashes.add(matcher.group(1));
+                }
+            }
+        } catch (NoSuchFileException exception) {
+            return hashes;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return hashes;
+    }
+
+    /**
+     * Ищет файл в папке загрузок. Имена с путем (../) не выходят за пределы папки
+     *
+     * @return файл с размером, датой изменения и SHA-256 содержимого
+     */
+    public Optional<StoredImage> find(String fileName) {
+        Path path = uploadDir.resolve(fileName).normalize();
+        if (!uploadDir.equals(path.getParent())) {
+            return Optional.empty();
+        }
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            StoredImage cached = storedImages.getIfPresent(fileName);
+            if (cached != null && cached.size() == attributes.size() && cached.lastModified() == lastModified) {
+                return Optional.of(cached);
+            }
+
+            StoredImage image = new StoredImage(path, attributes.size(), lastModified, sha256(path));
+            storedImages.put(fileName, image);
+            return Optional.of(image);
+        } catch (NoSuchFileException exception) {
+            return Optional.empty();
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public void delete(String fileName) {
+        storedImages.invalidate(fileName);
+        deleteQuietly(uploadDir.resolve(fileName));
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static String sha256(Path path) throws IOException {
+        MessageDigest digest = sha256Digest();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exception) {
+            log.warn("Could not delete {}", path, exception);
+        }
+    }
+
+    // Тип определяем по первым байтам файла, а не по Content-Type и расширению от клиента
+    private ImageType detectType(InputStream in) throws IOException {
+        in.mark(HEADER_SIZE);
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        in.reset();
+
+        for (ImageType type : ImageType.values()) {
+            if (type.matches(header)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private ResponseStatusException tooLarge() {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "Image must not be larger than " + maxImageBytes + " bytes");
+    }
+
+    public record StoredImage(Path path, long size, long lastModified, String sha256) {
+    }
+
+    public record StagedImage(Path tempFile, String hash, String fileName, long size) {
+    }
+
+    enum ImageType {
+        JPEG("jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+        PNG("png", new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}),
+        GIF("gif", new byte[]{'G', 'I', 'F', '8'}),
+        WEBP("webp", new byte[]{'R', 'I', 'F', 'F'});
+
+        private final String extension;
+        private final byte[] magic;
+
+        ImageType(String extension, byte[] magic) {
+            this.extension = extension;
+            this.magic = magic;
+        }
+
+        boolean matches(byte[] header) {
+            if (header.length < magic.length
+                    || !Arrays.equals(header, 0, magic.length, magic, 0, magic.length)) {
+                return false;
+            }
+            // RIFF - общий контейнер, WEBP указан в байтах 8..11
+            return this != WEBP || (header.length >= 12
+                    && Arrays.equals(header, 8, 12, new byte[]{'W', 'E', 'B', 'P'}, 0, 4));
+        }
+    }
+}
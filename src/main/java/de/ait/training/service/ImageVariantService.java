@@ -0,0 +1,241 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.util.WorkerThreads;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Уменьшенные копии загруженных картинок (thumbnail, medium).
+ * Генерируются в фоне ограниченным пулом воркеров после коммита attachImage,
+ * потом ссылки на них записываются в машину. Если очередь заполнена
+ * или формат не читается ImageIO (например, WEBP), у машины остается только оригинал
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+    private static final int SAVE_ATTEMPTS = 2;
+
+    private final ImageStorage imageStorage;
+    private final CarRepository carRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String hostUrl;
+    private final ThreadPoolExecutor workers;
+
+    public ImageVariantService(
+            ImageStorage imageStorage,
+            CarRepository carRepository,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${host.url}") String hostUrl,
+            @Value("${app.images.variants.workers:2}") int workers,
+            @Value("${app.images.variants.queue-capacity:100}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.imageStorage = imageStorage;
+        this.carRepository = carRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.hostUrl = hostUrl;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                WorkerThreads.factory("image-variants-", virtualThreads));
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Ставит генерацию копий в очередь и сразу возвращается
+     *
+     * @param fileName имя оригинала в папке загрузок
+     */
+    public void generateVariants(Long carId, String fileName) {
+        try {
+            workers.execute(() -> generate(carId, fileName));
+        } catch (RejectedExecutionException exception) {
+            log.warn("Image variants for car {} skipped, queue is full", carId);
+        }
+    }
+
+    private void generate(Long carId, String fileName) {
+        Map<Variant, String> variantUrls = new EnumMap<>(Variant.class);
+        try {
+            // Картинка хранится под хэшем содержимого: если ее копии уже сделаны для другой машины, берем их
+            for (Variant variant : Variant.values()) {
+                findVariant(fileName, variant).ifPresent(name -> variantUrls.put(variant, hostUrl + name));
+            }
+            if (variantUrls.size() < Variant.values().length) {
+                generateMissing(fileName, variantUrls);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error("Image variants for car {} failed", carId, exception);
+            return;
+        }
+        if (variantUrls.isEmpty()) {
+            log.warn("Image variants for car {} skipped, {} is not readable by ImageIO", carId, fileName);
+            return;
+        }
+
+        saveVariantUrls(carId, fileName, variantUrls);
+    }
+
+    // Исключение из задачи пула ушло бы в stderr мимо логов, поэтому ошибки записи ловим здесь
+    private void saveVariantUrls(Long carId, String fileName, Map<Variant, String> variantUrls) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean saved = Boolean.TRUE.equals(transactionTemplate.execute(status -> carRepository.findById(carId)
+                        // Пока копии считались, картинку могли заменить - тогда эти копии уже не нужны
+                        .filter(car -> Objects.equals(car.getImageUrl(), hostUrl + fileName))
+                        .map(car -> {
+                            Car before = car.copy();
+                            car.setThumbnailUrl(variantUrls.get(Variant.THUMBNAIL));
+                            car.setMediumUrl(variantUrls.get(Variant.MEDIUM));
+                            eventPublisher.publishEvent(new CarChangedEvent(before, car.copy()));
+                            return true;
+                        })
+                        .orElse(false)));
+                if (saved) {
+                    log.info("Image variants for car {} generated", carId);
+                } else {
+                    log.info("Image variants for car {} dropped, car or its image changed", carId);
+                }
+                return;
+            } catch (OptimisticLockingFailureException exception) {
+                // Машину изменили (PUT) между чтением и коммитом: читаем заново, картинка могла остаться той же
+                if (attempt < SAVE_ATTEMPTS) {
+                    log.info("Car {} changed while saving image variants, retrying", carId);
+                    continue;
+                }
+                log.error("Image variants for car {} not saved, car keeps changing", carId, exception);
+                return;
+            } catch (DataAccessException | TransactionException exception) {
+                log.error("Image variants for car {} not saved", carId, exception);
+                return;
+            }
+        }
+    }
+
+    private void generateMissing(String fileName, Map<Variant, String> variantUrls) throws IOException {
+        BufferedImage source = ImageIO.read(imageStorage.getUploadDir().resolve(fileName).toFile());
+        if (source == null) {
+            return;
+        }
+        for (Variant variant : Variant.values()) {
+            if (!variantUrls.containsKey(variant)) {
+                variantUrls.put(variant, hostUrl + writeVariant(source, fileName, variant));
+            }
+        }
+    }
+
+    private Optional<String> findVariant(String fileName, Variant variant) {
+        return Stream.of("jpg", "png")
+                .map(format -> variantFileName(fileName, variant, format))
+                .filter(name -> Files.exists(imageStorage.getUploadDir().resolve(name)))
+                .findFirst();
+    }
+
+    private static String variantFileName(String fileName, Variant variant, String format) {
+        int dot = fileName.lastIndexOf('.');
+        String baseName = (dot > 0) ? fileName.substring(0, dot) : fileName;
+        return baseName + "-" + variant.suffix + "." + format;
+    }
+
+    /**
+     * @return имя файла копии, или оригинала, если он и так не больше размера копии
+     */
+    private String writeVariant(BufferedImage source, String fileName, Variant variant) throws IOException {
+        double scale = Math.min(1.0, (double) variant.maxSize / Math.max(source.getWidth(), source.getHeight()));
+        if (scale == 1.0) {
+            return fileName;
+        }
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        String format = alpha ? "png" : "jpg";
+        BufferedImage resized = resize(source,
+                Math.max(1, (int) Math.round(source.getWidth() * scale)),
+                Math.max(1, (int) Math.round(source.getHeight() * scale)),
+                alpha);
+
+        String variantName = variantFileName(fileName, variant, format);
+
+        // Как и оригинал: пишем во временный файл и переименовываем, чтобы по ссылке не было недописанного файла
+        Path uploadDir = imageStorage.getUploadDir();
+        Path tempFile = Files.createTempFile(uploadDir, "variant-", ".tmp");
+        try {
+            ImageIO.write(resized, format, tempFile.toFile());
+            Files.move(tempFile, uploadDir.resolve(variantName), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return variantName;
+    }
+
+    // Уменьшаем в несколько шагов не больше чем вдвое: один билинейный шаг с большим коэффициентом дает "лесенку"
+    private static BufferedImage resize(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    enum Variant {
+        THUMBNAIL("thumb", 200),
+        MEDIUM("medium", 800);
+
+        private final String suffix;
+        private final int maxSize;
+
+        Variant(String suffix, int maxSize) {
+            this.suffix = suffix;
+            this.maxSize = maxSize;
+        }
+    }
+}
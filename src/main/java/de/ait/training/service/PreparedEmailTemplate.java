@@ -0,0 +1,89 @@
+package de.ait.training.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Шаблон письма, отрендеренный один раз на всю рассылку.
+ * Вместо персональных переменных Thymeleaf подставляет маркеры, по которым
+ * готовый HTML режется на статические куски. Для каждого получателя остается
+ * только склеить куски с экранированными значениями - без повторного рендера.
+ * Персональные переменные должны выводиться как текст (th:text или в атрибуте),
+ * условия и преобразования над ними (th:if, #strings...) вычисляются один раз по маркеру
+ */
+@Slf4j
+public final class PreparedEmailTemplate {
+    private final List<String> staticParts;
+    private final List<String> variableNames;
+
+    private PreparedEmailTemplate(List<String> staticParts, List<String> variableNames) {
+        this.staticParts = staticParts;
+        this.variableNames = variableNames;
+    }
+
+    public static PreparedEmailTemplate prepare(TemplateEngine templateEngine, String template,
+                                                Map<String, Object> campaignVariables,
+                                                Set<String> recipientVariables) {
+        // Случайная метка, чтобы маркер не совпал с текстом шаблона
+        String marker = "RCPT" + UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> variables = new HashMap<>(campaignVariables);
+        for (String name : recipientVariables) {
+            variables.put(name, marker + "_" + name + "_" + marker);
+        }
+
+        Context context = new Context();
+        context.setVariables(variables);
+        String html = templateEngine.process(template, context);
+
+        List<String> staticParts = new ArrayList<>();
+        List<String> variableNames = new ArrayList<>();
+        Matcher matcher = Pattern.compile(marker + "_(\\w+)_" + marker).matcher(html);
+        int start = 0;
+        while (matcher.find()) {
+            staticParts.add(html.substring(start, matcher.start()));
+            variableNames.add(matcher.group(1));
+            start = matcher.end();
+        }
+        staticParts.add(html.substring(start));
+
+        for (String name : recipientVariables) {
+            if (!variableNames.contains(name)) {
+                log.warn("Recipient variable {} is not rendered as text in template {}", name, template);
+            }
+        }
+        return new PreparedEmailTemplate(List.copyOf(staticParts), List.copyOf(variableNames));
+    }
+
+    public String render(Map<String, ?> recipientVariables) {
+        StringBuilder html = new StringBuilder(estimatedLength());
+        for (int i = 0; i < variableNames.size(); i++) {
+            html.append(staticParts.get(i));
+            Object value = recipientVariables.get(variableNames.get(i));
+            if (value != null) {
+                html.append(HtmlUtils.htmlEscape(value.toString(), StandardCharsets.UTF_8.name()));
+            }
+        }
+        html.append(staticParts.getLast());
+        return html.toString();
+    }
+
+    private int estimatedLength() {
+        int length = 0;
+        for (String part : staticParts) {
+            length += part.length();
+        }
+        return length + variableNames.size() * 32;
+    }
+}
@@ -0,0 +1,34 @@
+package de.ait.training.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации по id.
+ * Клиент получает его в заголовке ответа и передает обратно как есть,
+ * не завязываясь на внутреннее устройство (сейчас это последний выданный id).
+ */
+public final class CarCursor {
+    private static final String PREFIX = "car:";
+
+    private CarCursor() {
+    }
+
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor " + cursor);
+            }
+            return Long.parseLong(decoded.substring(PREFIX.length()));
+        } catch (IllegalArgumentException exception) {
+            // NumberFormatException тоже IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor " + cursor, exception);
+        }
+    }
+}
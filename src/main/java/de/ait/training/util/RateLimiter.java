@@ -0,0 +1,30 @@
+package de.ait.training.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Равномерно распределяет вызовы acquire() во времени: не больше permitsPerSecond в секунду.
+ * Каждый вызов занимает следующий свободный слот и спит до него, очереди и блокировок нет
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final AtomicLong nextSlot;
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be greater than 0");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.nextSlot = new AtomicLong(System.nanoTime());
+    }
+
+    public void acquire() throws InterruptedException {
+        long now = System.nanoTime();
+        long slot = nextSlot.getAndUpdate(previous -> Math.max(previous, now) + intervalNanos);
+        long waitNanos = slot - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package de.ait.training.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Потоки для фоновых пулов приложения (письма, рассылки, копии картинок).
+ * Виртуальные, если включен spring.threads.virtual.enabled - тогда виртуальные потоки
+ * и у Tomcat, и у applicationTaskExecutor. Размер пулов при этом не меняется:
+ * он ограничивает число SMTP-сессий и параллельную обработку картинок, а не число потоков
+ */
+public final class WorkerThreads {
+    private WorkerThreads() {
+    }
+
+    /**
+     * @param namePrefix к имени добавляется номер потока: prefix0, prefix1, ...
+     */
+    public static ThreadFactory factory(String namePrefix, boolean virtual) {
+        return virtual
+                ? Thread.ofVirtual().name(namePrefix, 0).factory()
+                : Thread.ofPlatform().name(namePrefix, 0).factory();
+    }
+}
@@ -0,0 +1,33 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Приложение без веб-сервера на H2 в памяти с той же схемой Liquibase, для бенчмарков с базой.
+ * В цифрах нет сети до PostgreSQL, поэтому сравнивать стоит варианты между собой, а не с продом
+ */
+final class BenchmarkApplication {
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String databaseName) {
+        return new SpringApplicationBuilder(DevelopmentGr54FsApplication.class)
+                .web(WebApplicationType.NONE)
+                // Как аргументы командной строки: они перекрывают application.properties
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:" + databaseName
+                                + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR,VALUE",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.show-sql=false",
+                        "--MAIL_USERNAME=benchmark@example.com",
+                        "--MAIL_PASSWORD=",
+                        "--upload.dir=target/benchmark-img",
+                        "--app.logging.path=target/benchmark-logs",
+                        "--logging.level.root=WARN");
+    }
+}
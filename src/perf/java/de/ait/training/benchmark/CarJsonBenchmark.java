@@ -0,0 +1,87 @@
+package de.ait.training.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.dto.CarView;
+import de.ait.training.model.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация списка машин в JSON без базы и HTTP, ObjectMapper с настройками Spring Boot:
+ * entities - сущности Car (GET /api/cars/{id}, ответы POST/PUT),
+ * views - проекции CarView одним writeValueAsBytes (страницы, фильтры),
+ * streamedViews - по одной машине через JsonGenerator, как потоковый GET /api/cars
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CarJsonBenchmark {
+
+    @Param({"50", "1000", "10000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<Car> cars;
+    private List<CarView> views;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        cars = new ArrayList<>(size);
+        views = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Car car = new Car((i % 2 == 0) ? "red" : "black", "Model " + i, 10_000 + i);
+            car.setId((long) i + 1);
+            car.setYear(2000 + i % 25);
+            car.setEngineType("petrol");
+            car.setImageUrl("http://localhost:8080/images/" + i + ".png");
+            car.setVersion(0L);
+            cars.add(car);
+            views.add(new CarView(car.getId(), car.getColor(), car.getModel(), car.getPrice(), car.getYear(),
+                    car.getEngineType(), car.getImageUrl(), null, null, car.getVersion()));
+        }
+    }
+
+    @Benchmark
+    public byte[] entities() throws IOException {
+        return objectMapper.writeValueAsBytes(cars);
+    }
+
+    @Benchmark
+    public byte[] views() throws IOException {
+        return objectMapper.writeValueAsBytes(views);
+    }
+
+    @Benchmark
+    public int streamedViews() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * size);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (CarView view : views) {
+                generator.writePOJO(view);
+            }
+            generator.writeEndArray();
+        }
+        return out.size();
+    }
+}
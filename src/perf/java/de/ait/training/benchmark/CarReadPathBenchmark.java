@@ -0,0 +1,98 @@
+package de.ait.training.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.dto.CarView;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение страницы машин и JSON-ответ, как в GET /api/cars?limit=..., в read-only транзакции:
+ * entities - сущности Car (контекст персистентности, прокси, учет каждой сущности),
+ * views - проекция CarView через select new, без сущностей.
+ * База - H2 в памяти (BenchmarkApplication).
+ * Аллокации на операцию (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.include="CarReadPathBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CarReadPathBenchmark {
+    private static final int CARS = 1000;
+
+    @Param({"50", "1000"})
+    private int limit;
+
+    private ConfigurableApplicationContext context;
+    private CarRepository carRepository;
+    private ObjectMapper objectMapper;
+    private TransactionTemplate readOnlyTransaction;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("benchmark");
+        carRepository = context.getBean(CarRepository.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        List<Car> cars = new ArrayList<>(CARS);
+        for (int i = 0; i < CARS; i++) {
+            Car car = new Car((i % 2 == 0) ? "red" : "black", "Model " + i, 10_000 + i);
+            car.setYear(2000 + i % 25);
+            car.setEngineType("petrol");
+            car.setImageUrl("http://localhost:8080/" + i + ".png");
+            cars.add(car);
+        }
+        carRepository.saveAll(cars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] entities() {
+        return readOnlyTransaction.execute(status -> toJson(
+                carRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(limit), Car.class)));
+    }
+
+    @Benchmark
+    public byte[] views() {
+        return readOnlyTransaction.execute(status -> toJson(
+                carRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(limit), CarView.class)));
+    }
+
+    private byte[] toJson(List<?> cars) {
+        try {
+            return objectMapper.writeValueAsBytes(cars);
+        } catch (JsonProcessingException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
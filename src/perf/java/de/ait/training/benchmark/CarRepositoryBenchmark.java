@@ -0,0 +1,109 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarView;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarSpecifications;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы CarRepository в read-only транзакции на таблице из 1 тыс., 100 тыс. и 1 млн машин.
+ * Каждый запрос возвращает одинаковое число строк при любом размере таблицы,
+ * поэтому рост времени с размером - это план запроса (индекс или полный просмотр), а не объем ответа:
+ * page - keyset-страница из середины таблицы, color - 100 красных машин
+ * (индекс по lower(color) есть только в PostgreSQL), priceRange - 100 машин по индексу цены,
+ * search - поиск по цене и году с сортировкой, как GET /api/cars/search.
+ * База - H2 в памяти (BenchmarkApplication), строки вставляются одним INSERT ... SELECT
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CarRepositoryBenchmark {
+    private static final int RESULT_SIZE = 100;
+    private static final int PAGE_SIZE = 50;
+    private static final double BASE_PRICE = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private CarRepository carRepository;
+    private TransactionTemplate readOnlyTransaction;
+    private double minPrice;
+    private double maxPrice;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("cars-" + rows);
+        carRepository = context.getBean(CarRepository.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+        // Без машин-примеров из Liquibase: их id заняты, и размер таблицы должен быть ровно rows
+        jdbcTemplate.update("DELETE FROM cars");
+        // Цена у каждой машины своя, каждая (rows / 100)-я машина красная
+        jdbcTemplate.update("""
+                INSERT INTO cars (id, color, model, price, year, engine_type, version)
+                SELECT X, CASE WHEN MOD(X, ?) = 0 THEN 'Red' ELSE 'black' END, 'Model ' || X,
+                       ? + X, 2000 + MOD(X, 25), 'petrol', 0
+                FROM SYSTEM_RANGE(1, ?)
+                """, rows / RESULT_SIZE, BASE_PRICE, rows);
+        minPrice = BASE_PRICE + rows / 2.0;
+        maxPrice = minPrice + RESULT_SIZE - 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<CarView> page() {
+        return readOnlyTransaction.execute(status -> carRepository.findByIdGreaterThanOrderByIdAsc(
+                rows / 2L, Limit.of(PAGE_SIZE), CarView.class));
+    }
+
+    @Benchmark
+    public List<CarView> color() {
+        return readOnlyTransaction.execute(status ->
+                carRepository.findCarByColorIgnoreCase("red", CarView.class));
+    }
+
+    @Benchmark
+    public List<CarView> priceRange() {
+        return readOnlyTransaction.execute(status ->
+                carRepository.findCarByPriceBetween(minPrice, maxPrice, CarView.class));
+    }
+
+    @Benchmark
+    public List<CarView> search() {
+        CarSearchCriteria criteria = new CarSearchCriteria(null, minPrice, maxPrice, 2010, null, null, null);
+        return readOnlyTransaction.execute(status -> carRepository.findBy(CarSpecifications.matching(criteria),
+                query -> query.as(CarView.class).sortBy(Sort.by("price")).limit(PAGE_SIZE).all()));
+    }
+}
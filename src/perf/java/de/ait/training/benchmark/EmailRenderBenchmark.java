@@ -0,0 +1,92 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.service.PreparedEmailTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость рендера одного письма email/CarService:
+ * uncached - каждый раз парсим шаблон (spring.thymeleaf.cache=false),
+ * cached - полный рендер разобранного шаблона (как EmailService.sendTemplateEmail),
+ * prepared - рендер один раз на рассылку, на письмо только подстановка (PreparedEmailTemplate)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailRenderBenchmark {
+    private static final String TEMPLATE = "email/CarService";
+    private static final Map<String, Object> CAMPAIGN_VARIABLES = Map.of(
+            "title", "Welcome to our service",
+            "promoCode", "AIT-223344");
+
+    private SpringTemplateEngine uncachedEngine;
+    private SpringTemplateEngine cachedEngine;
+    private PreparedEmailTemplate preparedTemplate;
+    private int recipient;
+
+    @Setup
+    public void setUp() {
+        uncachedEngine = templateEngine(false);
+        cachedEngine = templateEngine(true);
+        preparedTemplate = PreparedEmailTemplate.prepare(cachedEngine, TEMPLATE, CAMPAIGN_VARIABLES,
+                Set.of("userName"));
+    }
+
+    @Benchmark
+    public String uncached() {
+        return uncachedEngine.process(TEMPLATE, context(nextUserName()));
+    }
+
+    @Benchmark
+    public String cached() {
+        return cachedEngine.process(TEMPLATE, context(nextUserName()));
+    }
+
+    @Benchmark
+    public String prepared() {
+        return preparedTemplate.render(Map.of("userName", nextUserName()));
+    }
+
+    private String nextUserName() {
+        return "Client " + (recipient++ & 1023);
+    }
+
+    private Context context(String userName) {
+        Context context = new Context();
+        context.setVariables(CAMPAIGN_VARIABLES);
+        context.setVariable("userName", userName);
+        return context;
+    }
+
+    private static SpringTemplateEngine templateEngine(boolean cacheable) {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(cacheable);
+
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        return engine;
+    }
+}
@@ -0,0 +1,84 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.service.ImageStorage;
+import de.ait.training.service.ImageStorage.StagedImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись загруженной картинки на диск, как POST /api/cars/{id}/image без базы:
+ * проверка типа, копирование во временный файл с подсчетом SHA-256 и перенос в хранилище.
+ * newImage - каждый раз другое содержимое (файл переносится под новым именем и потом удаляется),
+ * duplicateImage - одна и та же картинка (файл уже есть, временный удаляется).
+ * Папка - target/benchmark-upload, цифры зависят от диска
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageUploadBenchmark {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final Path UPLOAD_DIR = Path.of("target", "benchmark-upload");
+
+    @Param({"65536", "1048576", "8388608"})
+    private int imageBytes;
+
+    private ImageStorage imageStorage;
+    private byte[] content;
+    private long counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(UPLOAD_DIR);
+        imageStorage = new ImageStorage(UPLOAD_DIR.toString(), DataSize.ofMegabytes(20));
+        content = new byte[imageBytes];
+        ThreadLocalRandom.current().nextBytes(content);
+        System.arraycopy(PNG_HEADER, 0, content, 0, PNG_HEADER.length);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(UPLOAD_DIR);
+    }
+
+    @Benchmark
+    public String newImage() throws IOException {
+        // Счетчик после заголовка меняет хэш, поэтому каждый раз это новый файл
+        ByteBuffer.wrap(content).putLong(PNG_HEADER.length, ++counter);
+        String fileName = imageStorage.commit(imageStorage.stage(file()));
+        Files.delete(UPLOAD_DIR.resolve(fileName));
+        return fileName;
+    }
+
+    @Benchmark
+    public String duplicateImage() {
+        StagedImage staged = imageStorage.stage(file());
+        return imageStorage.commit(staged);
+    }
+
+    private MockMultipartFile file() {
+        return new MockMultipartFile("file", "car.png", "image/png", content);
+    }
+}
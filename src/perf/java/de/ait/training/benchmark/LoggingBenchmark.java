@@ -0,0 +1,126 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.controller.RestApiCarController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сколько логирование добавляет к одному запросу GET /api/cars/color/{color}:
+ * строка контроллера "Code 200 - ..." и, при sql = true, запрос Hibernate в логгер org.hibernate.SQL.
+ * Логи настраиваются из logback-spring.xml через LoggingSystem Spring Boot, как в приложении:
+ * off - логи выключены (нижняя граница), plain - текст в потоке запроса (CONSOLE + FILE),
+ * json - JSON через AsyncAppender. 4 потока - как несколько потоков Tomcat с общими аппендерами.
+ * Консоль перенаправлена в файл target/benchmark-logs/console.out.
+ * В режиме json очередь за бенчмарком не успевает, и часть событий отбрасывается (neverBlock),
+ * поэтому цифра - это время потока запроса, а не пропускная способность записи
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private static final Path LOG_DIR = Path.of("target", "benchmark-logs");
+    // Так выглядит запрос с spring.jpa.properties.hibernate.format_sql=true
+    private static final String FORMATTED_SQL = """
+
+                select
+                    c1_0.id,
+                    c1_0.color,
+                    c1_0.model,
+                    c1_0.price,
+                    c1_0.year,
+                    c1_0.engine_type,
+                    c1_0.image_url,
+                    c1_0.thumbnail_url,
+                    c1_0.medium_url,
+                    c1_0.version
+                from
+                    cars c1_0
+                where
+                    lower(c1_0.color)=lower(?)""";
+
+    @Param({"off", "plain", "json"})
+    private String mode;
+
+    @Param({"false", "true"})
+    private boolean sql;
+
+    private LoggingSystem loggingSystem;
+    private PrintStream console;
+    private PrintStream originalOut;
+    private Logger controllerLog;
+    private Logger sqlLog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(LOG_DIR);
+        Files.createDirectories(LOG_DIR);
+        // Без буфера: как запись в pipe контейнера, каждое событие - отдельный write
+        originalOut = System.out;
+        console = new PrintStream(new FileOutputStream(LOG_DIR.resolve("console.out").toFile()), false);
+        System.setOut(console);
+
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "app.logging.mode", "off".equals(mode) ? "plain" : mode,
+                "app.logging.path", LOG_DIR.toString())));
+        loggingSystem = LoggingSystem.get(getClass().getClassLoader());
+        loggingSystem.beforeInitialize();
+        loggingSystem.initialize(new LoggingInitializationContext(environment), null, null);
+        // Уровни как в application.properties (de.ait INFO) и application-dev.properties (org.hibernate.SQL DEBUG)
+        loggingSystem.setLogLevel("de.ait", "off".equals(mode) ? LogLevel.OFF : LogLevel.INFO);
+        loggingSystem.setLogLevel("org.hibernate.SQL", sql && !"off".equals(mode) ? LogLevel.DEBUG : LogLevel.OFF);
+
+        controllerLog = LoggerFactory.getLogger(RestApiCarController.class);
+        sqlLog = LoggerFactory.getLogger("org.hibernate.SQL");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // Останавливает logback: асинхронные аппендеры дописывают очередь
+        loggingSystem.getShutdownHandler().run();
+        loggingSystem.cleanUp();
+        System.setOut(originalOut);
+        console.close();
+    }
+
+    @Benchmark
+    public void request() {
+        // Hibernate проверяет уровень сам и не передает SQL логгеру, если DEBUG выключен
+        if (sqlLog.isDebugEnabled()) {
+            sqlLog.debug(FORMATTED_SQL);
+        }
+        controllerLog.info("Code 200 - {} Cars found for color {}", 4, "red");
+    }
+}
@@ -0,0 +1,135 @@
+package de.ait.training.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный тест запросов, которые почти все время ждут JDBC, на запущенном приложении.
+ * На каждом уровне параллельности гоняет страницы (GET /api/cars?limit=50) и поиск
+ * (GET /api/cars/search), печатает req/s, p50/p99, число потоков JVM приложения
+ * и время закрепления виртуальных потоков (jvm.threads.virtual.pinned, есть только в режиме virtual).
+ * Сравнение режимов - два прогона на одной базе:
+ * VIRTUAL_THREADS=false (пул Tomcat, до 200 потоков) и VIRTUAL_THREADS=true.
+ * Запросы к базе ограничены пулом Hikari (DB_POOL_MAX_SIZE): виртуальные потоки убирают очередь
+ * к Tomcat, но не к базе, поэтому смотреть стоит и на hikaricp.connections.pending.
+ * <p>
+ * Запуск (после mvn -Pbenchmark test-compile):
+ * java -cp target/test-classes de.ait.training.loadtest.BlockingIoLoadTest &lt;url приложения&gt; [запросов на уровень]
+ * [уровни параллельности через запятую]
+ */
+public class BlockingIoLoadTest {
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"statistic\":\"(\\w+)\",\"value\":([0-9.E+-]+)");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: BlockingIoLoadTest <app url> [requests per level] [concurrency levels]");
+            System.exit(1);
+        }
+        String baseUrl = args[0].endsWith("/") ? args[0].substring(0, args[0].length() - 1) : args[0];
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        String levels = (args.length > 2) ? args[2] : "16,64,256,1024";
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<URI> uris = List.of(
+                URI.create(baseUrl + "/api/cars?limit=50"),
+                URI.create(baseUrl + "/api/cars/search?minPrice=1000&sort=price&limit=50"));
+
+        // Прогрев JIT и соединений
+        run(client, uris, requests / 4, 16);
+
+        for (String level : levels.split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            Result result = run(client, uris, requests, concurrency);
+            print(concurrency, result,
+                    metric(client, baseUrl, "jvm.threads.live", "VALUE"),
+                    metric(client, baseUrl, "jvm.threads.virtual.pinned", "TOTAL_TIME"));
+        }
+    }
+
+    private static Result run(HttpClient client, List<URI> uris, int requests, int concurrency) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<Integer, AtomicLong> statuses = Collections.synchronizedMap(new TreeMap<>());
+        Semaphore permits = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                HttpRequest request = HttpRequest.newBuilder(uris.get(i % uris.size())).build();
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        long requestStart = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies.add(System.nanoTime() - requestStart);
+                        statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(latencies, statuses, System.nanoTime() - start);
+    }
+
+    /**
+     * @return значение из /actuator/metrics/{name} или NaN, если метрики нет
+     */
+    private static double metric(HttpClient client, String baseUrl, String name, String statistic) throws Exception {
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + name)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return Double.NaN;
+        }
+        Matcher matcher = METRIC_VALUE.matcher(response.body());
+        while (matcher.find()) {
+            if (matcher.group(1).equals(statistic)) {
+                return Double.parseDouble(matcher.group(2));
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static void print(int concurrency, Result result, double threads, double pinnedSeconds) {
+        List<Long> sorted = new ArrayList<>(result.latencies());
+        Collections.sort(sorted);
+        System.out.printf("concurrency %5d  %6d req  %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms  "
+                        + "app threads %4.0f  pinned %s  statuses %s%n",
+                concurrency, sorted.size(),
+                sorted.size() / (result.elapsedNanos() / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                threads,
+                Double.isNaN(pinnedSeconds) ? "-" : String.format("%.1f ms", pinnedSeconds * 1000),
+                result.statuses());
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private record Result(List<Long> latencies, Map<Integer, AtomicLong> statuses, long elapsedNanos) {
+    }
+}
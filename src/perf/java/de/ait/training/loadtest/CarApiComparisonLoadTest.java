@@ -0,0 +1,122 @@
+package de.ait.training.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сравнение RestApiCarController (Tomcat + JDBC) и reactive-car-api (Netty + R2DBC) на одной базе.
+ * На каждом уровне параллельности оба приложения получают одинаковые GET-запросы: страницу,
+ * машину по id, фильтр по цвету и полный список (JSON); печатаются req/s и p50/p99 рядом.
+ * Размер пула соединений у обоих задается одним DB_POOL_MAX_SIZE, иначе сравнивается пул, а не стек.
+ * <p>
+ * Запуск (после mvn -Pbenchmark test-compile, оба приложения подняты на одной базе):
+ * java -cp target/test-classes de.ait.training.loadtest.CarApiComparisonLoadTest &lt;url servlet&gt; &lt;url reactive&gt;
+ * [запросов на уровень] [уровни параллельности через запятую] [id существующей машины]
+ */
+public class CarApiComparisonLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CarApiComparisonLoadTest <servlet url> <reactive url> "
+                    + "[requests per level] [concurrency levels] [car id]");
+            System.exit(1);
+        }
+        String servletUrl = trimSlash(args[0]);
+        String reactiveUrl = trimSlash(args[1]);
+        int requests = (args.length > 2) ? Integer.parseInt(args[2]) : 5000;
+        String levels = (args.length > 3) ? args[3] : "16,64,256,1024";
+        String carId = (args.length > 4) ? args[4] : "1";
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<String> paths = List.of(
+                "/api/cars?limit=50",
+                "/api/cars/" + carId,
+                "/api/cars/color/red",
+                "/api/cars");
+
+        // Прогрев JIT и соединений у обоих приложений
+        run(client, uris(servletUrl, paths), requests / 4, 16);
+        run(client, uris(reactiveUrl, paths), requests / 4, 16);
+
+        for (String level : levels.split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            print("servlet ", concurrency, run(client, uris(servletUrl, paths), requests, concurrency));
+            print("reactive", concurrency, run(client, uris(reactiveUrl, paths), requests, concurrency));
+        }
+    }
+
+    private static Result run(HttpClient client, List<URI> uris, int requests, int concurrency) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<Integer, AtomicLong> statuses = Collections.synchronizedMap(new TreeMap<>());
+        AtomicLong bytes = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                HttpRequest request = HttpRequest.newBuilder(uris.get(i % uris.size())).build();
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        long requestStart = System.nanoTime();
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        latencies.add(System.nanoTime() - requestStart);
+                        bytes.addAndGet(response.body().length);
+                        statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(latencies, statuses, bytes.get(), System.nanoTime() - start);
+    }
+
+    private static List<URI> uris(String baseUrl, List<String> paths) {
+        return paths.stream().map(path -> URI.create(baseUrl + path)).toList();
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private static void print(String stack, int concurrency, Result result) {
+        List<Long> sorted = new ArrayList<>(result.latencies());
+        Collections.sort(sorted);
+        System.out.printf("%s concurrency %5d  %6d req  %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms  "
+                        + "%6.1f MB  statuses %s%n",
+                stack, concurrency, sorted.size(),
+                sorted.size() / (result.elapsedNanos() / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                result.bytes() / 1e6,
+                result.statuses());
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private record Result(List<Long> latencies, Map<Integer, AtomicLong> statuses, long bytes, long elapsedNanos) {
+    }
+}
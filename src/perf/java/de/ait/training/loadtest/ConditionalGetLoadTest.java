@@ -0,0 +1,141 @@
+package de.ait.training.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Сколько трафика и запросов к базе экономят ETag списков машин и сжатие.
+ * Одни и те же GET-запросы (полный список, страница, фильтры) идут в трех режимах:
+ * plain - без заголовков, gzip - Accept-Encoding: gzip, gzip+etag - клиент, как браузер,
+ * запоминает ETag каждого URL и присылает If-None-Match (таблица не меняется, поэтому почти все ответы 304).
+ * Печатаются req/s, p50/p99, байты тела на проводе (HttpClient не распаковывает gzip)
+ * и число вызовов репозиториев по /actuator/metrics/spring.data.repository.invocations.
+ * Чтение версии таблицы - один запрос по первичному ключу через JdbcTemplate, в этом счетчике его нет.
+ * <p>
+ * Запуск (после mvn -Pbenchmark test-compile, приложение поднято, в таблице есть машины):
+ * java -cp target/test-classes de.ait.training.loadtest.ConditionalGetLoadTest &lt;base url&gt;
+ * [запросов на режим] [параллельность]
+ */
+public class ConditionalGetLoadTest {
+    private static final Pattern COUNT = Pattern.compile("\"statistic\":\"COUNT\",\"value\":([0-9.]+)");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ConditionalGetLoadTest <base url> [requests per mode] [concurrency]");
+            System.exit(1);
+        }
+        String baseUrl = args[0].endsWith("/") ? args[0].substring(0, args[0].length() - 1) : args[0];
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        int concurrency = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<URI> uris = List.of(
+                URI.create(baseUrl + "/api/cars"),
+                URI.create(baseUrl + "/api/cars?limit=100"),
+                URI.create(baseUrl + "/api/cars/color/red"),
+                URI.create(baseUrl + "/api/cars/price/under/50000"),
+                URI.create(baseUrl + "/api/cars/search?minYear=2015&sort=price,desc"));
+        URI invocations = URI.create(baseUrl + "/actuator/metrics/spring.data.repository.invocations");
+
+        // Прогрев JIT и соединений
+        run(client, uris, requests / 4, concurrency, false, null);
+
+        for (String mode : List.of("plain", "gzip", "gzip+etag")) {
+            boolean gzip = !mode.equals("plain");
+            Map<URI, String> etags = mode.endsWith("etag") ? new ConcurrentHashMap<>() : null;
+            long queriesBefore = count(client, invocations);
+            Result result = run(client, uris, requests, concurrency, gzip, etags);
+            print(mode, result, count(client, invocations) - queriesBefore);
+        }
+    }
+
+    private static Result run(HttpClient client, List<URI> uris, int requests, int concurrency,
+                              boolean gzip, Map<URI, String> etags) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<Integer, AtomicLong> statuses = Collections.synchronizedMap(new TreeMap<>());
+        AtomicLong bytes = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                URI uri = uris.get(i % uris.size());
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        HttpRequest.Builder request = HttpRequest.newBuilder(uri);
+                        if (gzip) {
+                            request.header("Accept-Encoding", "gzip");
+                        }
+                        String etag = (etags == null) ? null : etags.get(uri);
+                        if (etag != null) {
+                            request.header("If-None-Match", etag);
+                        }
+                        long requestStart = System.nanoTime();
+                        HttpResponse<byte[]> response = client.send(request.build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        latencies.add(System.nanoTime() - requestStart);
+                        bytes.addAndGet(response.body().length);
+                        statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+                        if (etags != null && response.statusCode() == 200) {
+                            response.headers().firstValue("ETag").ifPresent(value -> etags.put(uri, value));
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(latencies, statuses, bytes.get(), System.nanoTime() - start);
+    }
+
+    private static long count(HttpClient client, URI metric) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(metric).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = COUNT.matcher(response.body());
+        return matcher.find() ? (long) Double.parseDouble(matcher.group(1)) : 0;
+    }
+
+    private static void print(String mode, Result result, long queries) {
+        List<Long> sorted = new ArrayList<>(result.latencies());
+        Collections.sort(sorted);
+        System.out.printf("%-9s  %6d req  %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms  "
+                        + "%8.2f MB  %6d repository calls  statuses %s%n",
+                mode, sorted.size(),
+                sorted.size() / (result.elapsedNanos() / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                result.bytes() / 1e6, queries,
+                result.statuses());
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private record Result(List<Long> latencies, Map<Integer, AtomicLong> statuses, long bytes, long elapsedNanos) {
+    }
+}
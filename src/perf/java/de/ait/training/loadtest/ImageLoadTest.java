@@ -0,0 +1,120 @@
+package de.ait.training.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест отдачи картинок (ImageController) на запущенном приложении.
+ * Сравнивает три сценария на одной картинке:
+ * full - клиент без кэша каждый раз скачивает файл целиком,
+ * revalidate - клиент с кэшем перепроверяет копию по If-None-Match и получает 304,
+ * range - клиент докачивает файл частями по 64 КБ.
+ * Клиент с immutable-кэшем в пределах max-age запросов не отправляет вовсе.
+ * <p>
+ * Запуск (после mvn -Pbenchmark test-compile):
+ * java -cp target/test-classes de.ait.training.loadtest.ImageLoadTest &lt;url картинки&gt; [запросов] [параллельно]
+ */
+public class ImageLoadTest {
+    private static final int RANGE_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ImageLoadTest <image url> [requests] [concurrency]");
+            System.exit(1);
+        }
+        URI uri = URI.create(args[0]);
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int concurrency = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpResponse<Void> first = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+        String etag = first.headers().firstValue("ETag").orElseThrow(() -> new IllegalStateException("No ETag in response"));
+        long size = first.headers().firstValueAsLong("Content-Length").orElse(0);
+        System.out.printf("%s: %d bytes, ETag %s, Cache-Control %s%n", uri, size, etag,
+                first.headers().firstValue("Cache-Control").orElse("-"));
+
+        // Прогрев JIT и соединений
+        run(client, requests / 4, concurrency, index -> HttpRequest.newBuilder(uri).build());
+
+        print("full", run(client, requests, concurrency, index -> HttpRequest.newBuilder(uri).build()));
+        print("revalidate", run(client, requests, concurrency, index -> HttpRequest.newBuilder(uri)
+                .header("If-None-Match", etag)
+                .build()));
+        print("range", run(client, requests, concurrency, index -> {
+            long start = (size <= RANGE_SIZE) ? 0 : (index * (long) RANGE_SIZE) % size;
+            return HttpRequest.newBuilder(uri)
+                    .header("Range", "bytes=" + start + "-" + (start + RANGE_SIZE - 1))
+                    .build();
+        }));
+    }
+
+    private static Result run(HttpClient client, int requests, int concurrency,
+                              RequestFactory requestFactory) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<Integer, AtomicLong> statuses = Collections.synchronizedMap(new TreeMap<>());
+        AtomicLong bytes = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                HttpRequest request = requestFactory.create(i);
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        long requestStart = System.nanoTime();
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        latencies.add(System.nanoTime() - requestStart);
+                        bytes.addAndGet(response.body().length);
+                        statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(latencies, statuses, bytes.get(), System.nanoTime() - start);
+    }
+
+    private static void print(String name, Result result) {
+        List<Long> sorted = new ArrayList<>(result.latencies());
+        Collections.sort(sorted);
+        System.out.printf("%-10s %6d req  %8.1f req/s  body %10d bytes (%8.1f per req)  "
+                        + "p50 %6.2f ms  p95 %6.2f ms  p99 %6.2f ms  statuses %s%n",
+                name, sorted.size(),
+                sorted.size() / (result.elapsedNanos() / 1e9),
+                result.bytes(), (double) result.bytes() / sorted.size(),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                result.statuses());
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        HttpRequest create(int index);
+    }
+
+    private record Result(List<Long> latencies, Map<Integer, AtomicLong> statuses, long bytes, long elapsedNanos) {
+    }
+}
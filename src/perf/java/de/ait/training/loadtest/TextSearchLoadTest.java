@@ -0,0 +1,160 @@
+package de.ait.training.loadtest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Задержка /api/cars/search/text на большой таблице.
+ * Три вида запросов: prefix - начало модели ("bmw x"), typo - модель с опечаткой ("mersedes"),
+ * words - несколько слов в другом порядке ("a4 audi"). Печатаются req/s и p50/p99 по каждому виду,
+ * p99 сравнивается с целью. ETag не отправляется, поэтому каждый запрос доходит до базы.
+ * С параметром seed сначала импортирует заданное число машин через /api/cars/import
+ * (порциями по 100 000 строк CSV), модели - сочетания марок, серий и номеров.
+ * Цель рассчитана на PostgreSQL с индексом idx_cars_lower_model_trgm: на H2 поиск идет в Java
+ * по всем моделям и на миллионе строк цель не выдерживает.
+ * <p>
+ * Запуск (после mvn -Pbenchmark test-compile, приложение поднято на PostgreSQL):
+ * java -cp target/test-classes de.ait.training.loadtest.TextSearchLoadTest &lt;base url&gt;
+ * [запросов на вид] [параллельность] [цель p99, мс] [seed &lt;машин&gt;]
+ */
+public class TextSearchLoadTest {
+    private static final int SEED_CHUNK = 100_000;
+    private static final List<String> BRANDS = List.of(
+            "BMW", "Audi", "Mercedes", "Volkswagen", "Toyota", "Honda", "Ferrari", "Porsche", "Skoda", "Renault");
+    private static final List<String> SERIES = List.of(
+            "x", "a", "gt", "sport", "line", "cross", "coupe", "touring", "e", "s");
+    private static final Map<String, List<String>> QUERIES = Map.of(
+            "prefix", List.of("bmw x", "audi a", "toyota", "porsche gt", "skoda"),
+            "typo", List.of("mersedes", "volkswagn", "ferary", "porshe", "renolt"),
+            "words", List.of("a4 audi", "x5 bmw", "coupe ferrari", "sport honda", "touring skoda"));
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TextSearchLoadTest <base url> [requests per kind] [concurrency]"
+                    + " [p99 target ms] [seed <cars>]");
+            System.exit(1);
+        }
+        String baseUrl = args[0].endsWith("/") ? args[0].substring(0, args[0].length() - 1) : args[0];
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        int concurrency = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+        double targetP99 = (args.length > 3) ? Double.parseDouble(args[3]) : 50;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        if (args.length > 5 && args[4].equals("seed")) {
+            seed(client, baseUrl, Integer.parseInt(args[5]));
+        }
+
+        // Прогрев JIT, соединений и кэша страниц базы
+        for (List<String> queries : QUERIES.values()) {
+            run(client, uris(baseUrl, queries), requests / 4, concurrency);
+        }
+
+        boolean passed = true;
+        for (String kind : new TreeMap<>(QUERIES).keySet()) {
+            Result result = run(client, uris(baseUrl, QUERIES.get(kind)), requests, concurrency);
+            passed &= print(kind, result, targetP99);
+        }
+        System.out.println(passed ? "p99 target met" : "p99 target missed");
+    }
+
+    private static void seed(HttpClient client, String baseUrl, int cars) throws Exception {
+        URI importUri = URI.create(baseUrl + "/api/cars/import");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (int offset = 0; offset < cars; offset += SEED_CHUNK) {
+            StringBuilder csv = new StringBuilder("color,model,price,year,engine_type\n");
+            for (int i = offset; i < Math.min(cars, offset + SEED_CHUNK); i++) {
+                String model = BRANDS.get(random.nextInt(BRANDS.size())) + " "
+                        + SERIES.get(random.nextInt(SERIES.size())) + random.nextInt(1, 10);
+                csv.append("grey,").append(model).append(',')
+                        .append(random.nextInt(5_000, 300_000)).append(',')
+                        .append(random.nextInt(1990, 2026)).append(",PETROL\n");
+            }
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(importUri)
+                            .header("Content-Type", "text/csv")
+                            .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Import failed: " + response.statusCode() + " " + response.body());
+            }
+        }
+        System.out.printf("seeded %d cars in %.1f s%n", cars, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static List<URI> uris(String baseUrl, List<String> queries) {
+        return queries.stream()
+                .map(query -> URI.create(baseUrl + "/api/cars/search/text?limit=20&q="
+                        + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+                .toList();
+    }
+
+    private static Result run(HttpClient client, List<URI> uris, int requests, int concurrency) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<Integer, AtomicLong> statuses = Collections.synchronizedMap(new TreeMap<>());
+        Semaphore permits = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                URI uri = uris.get(i % uris.size());
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        long requestStart = System.nanoTime();
+                        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        latencies.add(System.nanoTime() - requestStart);
+                        statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(latencies, statuses, System.nanoTime() - start);
+    }
+
+    private static boolean print(String kind, Result result, double targetP99) {
+        List<Long> sorted = new ArrayList<>(result.latencies());
+        Collections.sort(sorted);
+        double p99 = percentile(sorted, 0.99);
+        System.out.printf("%-6s  %6d req  %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms (target %.0f ms%s)  statuses %s%n",
+                kind, sorted.size(),
+                sorted.size() / (result.elapsedNanos() / 1e9),
+                percentile(sorted, 0.50), p99, targetP99, (p99 <= targetP99) ? "" : ", MISSED",
+                result.statuses());
+        return p99 <= targetP99;
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private record Result(List<Long> latencies, Map<Integer, AtomicLong> statuses, long elapsedNanos) {
+    }
+}
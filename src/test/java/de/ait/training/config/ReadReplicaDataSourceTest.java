@@ -0,0 +1,95 @@
+package de.ait.training.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadReplicaDataSourceTest { // две базы H2 в памяти вместо основной базы и реплики
+    private static final String LAG_QUERY = "SELECT seconds FROM replica_lag";
+
+    private DataSource primary;
+    private DataSource replica;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void createDatabases() {
+        primary = database("primary");
+        replica = database("replica");
+        new JdbcTemplate(replica).execute("CREATE TABLE replica_lag (seconds DOUBLE)");
+        new JdbcTemplate(replica).update("INSERT INTO replica_lag VALUES (0)");
+    }
+
+    @Test
+    @DisplayName("Read-only transaction reads the replica, read-write transaction the primary")
+    void testRouting_shouldSendReadOnlyTransactionsToReplica() {
+        DataSource routing = routing(new ReadReplicaDataSource(primary, Map.of("replica-1", replica),
+                LAG_QUERY, Duration.ofSeconds(10)));
+
+        assertThat(readSource(routing, true)).isEqualTo("replica");
+        assertThat(readSource(routing, false)).isEqualTo("primary");
+    }
+
+    @Test
+    @DisplayName("Replica is down, read-only transaction falls back to the primary")
+    void testRouting_shouldFallBackToPrimary_whenReplicaIsDown() {
+        DataSource down = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/nowhere", "sa", "");
+        ReadReplicaDataSource replicas = new ReadReplicaDataSource(primary, Map.of("replica-1", down),
+                LAG_QUERY, Duration.ofSeconds(10));
+        replicas.bindTo(meterRegistry);
+
+        assertThat(readSource(routing(replicas), true)).isEqualTo("primary");
+        assertThat(meterRegistry.get("db.replica.available").gauge().value()).isZero();
+        assertThat(meterRegistry.get("db.replica.fallbacks").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Replica lags behind, reads go to the primary until it catches up")
+    void testCheckReplicas_shouldSkipReplica_whileItLags() {
+        ReadReplicaDataSource replicas = new ReadReplicaDataSource(primary, Map.of("replica-1", replica),
+                LAG_QUERY, Duration.ofSeconds(10));
+        DataSource routing = routing(replicas);
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 30");
+        replicas.checkReplicas();
+        assertThat(readSource(routing, true)).isEqualTo("primary");
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 1");
+        replicas.checkReplicas();
+        assertThat(readSource(routing, true)).isEqualTo("replica");
+    }
+
+    private DataSource routing(ReadReplicaDataSource replicas) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(replicas);
+        return routing;
+    }
+
+    private static String readSource(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status ->
+                new JdbcTemplate(dataSource).queryForObject("SELECT name FROM source", String.class));
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE source (name VARCHAR(16))");
+        jdbcTemplate.update("INSERT INTO source VALUES (?)", name);
+        return dataSource;
+    }
+}
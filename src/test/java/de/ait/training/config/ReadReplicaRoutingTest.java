@@ -0,0 +1,144 @@
+package de.ait.training.config;
+
+import de.ait.training.dto.CarView;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.ImageBlobRepository;
+import de.ait.training.service.CarAggregates;
+import de.ait.training.service.CarCache;
+import de.ait.training.service.CarServiceImpl;
+import de.ait.training.service.CarTableVersion;
+import de.ait.training.service.ImageStorage;
+import de.ait.training.service.ImageVariantService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Маршрутизация чтений CarServiceImpl через ReadReplicaConfig: основная база и реплика - две базы H2,
+ * схема в обеих из Liquibase, строки разные, поэтому по результату видно, откуда шло чтение
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "app.datasource.replicas.urls=" + ReadReplicaRoutingTest.REPLICA_URL,
+        "app.datasource.replicas.lag-query="
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ReadReplicaConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // транзакции открывает сам сервис, как в приложении
+class ReadReplicaRoutingTest {
+    // Без запятых: app.datasource.replicas.urls - список через запятую
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR";
+
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    private CarServiceImpl carService;
+    private long primaryCarId;
+
+    @BeforeEach
+    void createDatabases() throws Exception {
+        DataSource replica = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(replica);
+        liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.xml");
+        liquibase.afterPropertiesSet();
+
+        new JdbcTemplate(replica).update("DELETE FROM cars");
+        carRepository.deleteAll();
+        Car primaryCar = new Car("black", "Primary car", 10000);
+        primaryCar.setYear(2020);
+        primaryCarId = carRepository.save(primaryCar).getId();
+        // Та же машина на реплике, но реплика отстает
+        new JdbcTemplate(replica).update(
+                "INSERT INTO cars (id, color, model, price, year, version) VALUES (?, 'black', 'Stale car', 10000, 2020, 0)",
+                primaryCarId);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        carService = new CarServiceImpl(carRepository, mock(ImageStorage.class), imageBlobRepository,
+                mock(ImageVariantService.class), "http://localhost:8080/", 500,
+                new CarCache(meterRegistry, 100, 100, Duration.ofMinutes(10)), mock(CarAggregates.class),
+                event -> {
+                }, transactionManager, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Replicas configured, dataSource wrapped into routing proxy")
+    void testDataSource_shouldBeRoutingProxy_whenReplicasConfigured() {
+        assertThat(dataSource).isInstanceOf(LazyConnectionDataSourceProxy.class);
+    }
+
+    @Test
+    @DisplayName("Streaming export outside transaction, every batch read from the replica")
+    void testForEachCar_shouldReadReplica_whenCalledWithoutTransaction() {
+        List<String> models = new ArrayList<>();
+
+        carService.forEachCar(0, car -> models.add(car.model()));
+
+        assertThat(models).containsExactly("Stale car");
+    }
+
+    @Test
+    @DisplayName("Repository query method outside transaction, read from the primary")
+    void testFindByIdGreaterThan_shouldReadPrimary_whenCalledWithoutTransaction() {
+        // Поэтому forEachCar сам открывает read-only транзакцию на каждую порцию
+        assertThat(carRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(10), CarView.class))
+                .extracting(CarView::model)
+                .containsExactly("Primary car");
+    }
+
+    @Test
+    @DisplayName("Cache misses loaded from the primary, lagging replica rows not cached")
+    void testCachedLookups_shouldLoadFromPrimary() {
+        assertThat(carService.findById(primaryCarId)).get().extracting(Car::getModel).isEqualTo("Primary car");
+        assertThat(carService.findByColor("black")).extracting(CarView::model).containsExactly("Primary car");
+        assertThat(carService.findByPriceRange(5000.0, 20000.0)).extracting(CarView::model)
+                .containsExactly("Primary car");
+    }
+
+    @Test
+    @DisplayName("Import committed on the primary, replica not replayed yet, stats rebuild counts it")
+    void testRebuild_shouldReadPrimary_whenReplicaLagsBehindImport() {
+        // Импорт: машины есть только в основной базе, реплика их еще не получила
+        Car imported = new Car("white", "Imported car", 30000);
+        imported.setYear(2024);
+        carRepository.save(imported);
+        CarAggregates carAggregates = new CarAggregates(carRepository,
+                new CarTableVersion(dataSource, transactionManager), transactionManager, 10000);
+
+        carAggregates.rebuild();
+
+        assertThat(carAggregates.getStats().count()).isEqualTo(2);
+        assertThat(carAggregates.getStats().colors()).containsEntry("white", 1L);
+    }
+}
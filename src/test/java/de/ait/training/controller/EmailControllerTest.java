@@ -0,0 +1,79 @@
+package de.ait.training.controller;
+
+import de.ait.training.dto.CampaignStatus;
+import de.ait.training.service.CampaignService;
+import de.ait.training.service.EmailService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class EmailControllerTest { // контроллер без контекста Spring, сервисы - заглушки Mockito
+    private static final String CAMPAIGN = """
+            {"subject": "Car service time", "template": "email/CarService",
+             "recipients": [{"email": "client@example.com", "variables": {"userName": "Client"}}]}""";
+
+    private final CampaignService campaignService = mock(CampaignService.class);
+    private final MockMvc mockMvc = MockMvcBuilders
+            .standaloneSetup(new EmailController(mock(EmailService.class), campaignService, true))
+            .build();
+
+    @Test
+    @DisplayName("Start campaign, status Accepted with Location of the status resource")
+    void testStartCampaign_shouldReturnAccepted_whenRequestIsValid() throws Exception {
+        given(campaignService.startCampaign(any())).willReturn(campaign("c-1", CampaignStatus.State.QUEUED));
+
+        mockMvc.perform(post("/api/email/campaigns").contentType(MediaType.APPLICATION_JSON).content(CAMPAIGN))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/email/campaigns/c-1"))
+                .andExpect(jsonPath("$.state").value("QUEUED"));
+    }
+
+    @Test
+    @DisplayName("Start campaign while campaign queue is full, status ServiceUnavailable")
+    void testStartCampaign_shouldReturnServiceUnavailable_whenQueueIsFull() throws Exception {
+        given(campaignService.startCampaign(any())).willThrow(new RejectedExecutionException("Campaign queue is full"));
+
+        mockMvc.perform(post("/api/email/campaigns").contentType(MediaType.APPLICATION_JSON).content(CAMPAIGN))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @DisplayName("Get campaign status, counters returned, status Ok")
+    void testGetCampaign_shouldReturnStatus_whenCampaignExists() throws Exception {
+        given(campaignService.getCampaign("c-1")).willReturn(Optional.of(campaign("c-1", CampaignStatus.State.COMPLETED)));
+
+        mockMvc.perform(get("/api/email/campaigns/c-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("COMPLETED"))
+                .andExpect(jsonPath("$.sent").value(2))
+                .andExpect(jsonPath("$.failed").value(1));
+    }
+
+    @Test
+    @DisplayName("Get unknown campaign, status NotFound")
+    void testGetCampaign_shouldReturnNotFound_whenCampaignIsUnknown() throws Exception {
+        given(campaignService.getCampaign("unknown")).willReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/email/campaigns/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static CampaignStatus campaign(String id, CampaignStatus.State state) {
+        return new CampaignStatus(id, state, 3, 2, 1, Instant.now(), null);
+    }
+}
@@ -0,0 +1,117 @@
+package de.ait.training.controller;
+
+import de.ait.training.service.ImageStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ImageControllerTest { // настоящее хранилище во временной папке, контроллер без контекста Spring
+    private static final byte[] IMAGE = "\u0089PNG\r\n\u001a\nimage-content".getBytes(StandardCharsets.ISO_8859_1);
+    private static final String LEGACY_NAME = "123e4567-e89b-12d3-a456-426614174000-my_car.png";
+
+    @TempDir
+    Path uploadDir;
+
+    private MockMvc mockMvc;
+    private String hash;
+    private String etag;
+
+    @BeforeEach
+    void storeImage() throws Exception {
+        hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(IMAGE));
+        etag = "\"" + hash + "\"";
+        Files.write(uploadDir.resolve(hash + ".png"), IMAGE);
+        Files.write(uploadDir.resolve(LEGACY_NAME), IMAGE);
+
+        ImageStorage imageStorage = new ImageStorage(uploadDir.toString(), DataSize.ofMegabytes(1));
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(imageStorage)).build();
+    }
+
+    @Test
+    @DisplayName("Get image by content hash, whole file with ETag and immutable caching, status Ok")
+    void testGetImage_shouldReturnImageWithCacheHeaders_whenImageExists() throws Exception {
+        mockMvc.perform(get("/" + hash + ".png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("max-age=31536000")))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, IMAGE.length));
+    }
+
+    @Test
+    @DisplayName("Get image with matching If-None-Match, status NotModified")
+    void testGetImage_shouldReturnNotModified_whenEtagMatches() throws Exception {
+        mockMvc.perform(get("/" + hash + ".png").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @DisplayName("Get first 4 bytes of image by Range, status PartialContent")
+    void testGetImage_shouldReturnPartialContent_whenRangeRequested() throws Exception {
+        mockMvc.perform(get("/" + hash + ".png").header(HttpHeaders.RANGE, "bytes=0-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-3/" + IMAGE.length))
+                .andExpect(content().bytes(new byte[]{IMAGE[0], IMAGE[1], IMAGE[2], IMAGE[3]}));
+    }
+
+    @Test
+    @DisplayName("Get image by Range with matching If-Range, status PartialContent")
+    void testGetImage_shouldReturnPartialContent_whenIfRangeMatches() throws Exception {
+        mockMvc.perform(get("/" + hash + ".png")
+                        .header(HttpHeaders.RANGE, "bytes=4-")
+                        .header(HttpHeaders.IF_RANGE, etag))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                        "bytes 4-" + (IMAGE.length - 1) + "/" + IMAGE.length));
+    }
+
+    @Test
+    @DisplayName("Get image by Range with outdated If-Range, whole file, status Ok")
+    void testGetImage_shouldReturnWholeImage_whenIfRangeDoesNotMatch() throws Exception {
+        mockMvc.perform(get("/" + hash + ".png")
+                        .header(HttpHeaders.RANGE, "bytes=0-3")
+                        .header(HttpHeaders.IF_RANGE, "\"outdated\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    @DisplayName("Get image uploaded under an old UUID name, status Ok")
+    void testGetImage_shouldReturnImage_whenNameIsLegacyUuid() throws Exception {
+        mockMvc.perform(get("/" + LEGACY_NAME))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    @DisplayName("Get image that is not stored, status NotFound")
+    void testGetImage_shouldReturnNotFound_whenImageIsMissing() throws Exception {
+        mockMvc.perform(get("/" + "0".repeat(64) + ".png"))
+                .andExpect(status().isNotFound());
+    }
+}
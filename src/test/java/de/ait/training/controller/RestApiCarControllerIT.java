@@ -1,25 +1,38 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.CarBatchResult;
+import de.ait.training.dto.CarImportResult;
+import de.ait.training.dto.CarStats;
 import de.ait.training.model.Car;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
+@AutoConfigureObservability(tracing = false) // без нее в тестах нет /actuator/prometheus
 public class RestApiCarControllerIT { // IT - интеграционный тест
     @LocalServerPort
     private int port;
@@ -64,6 +77,189 @@ public class RestApiCarControllerIT { // IT - интеграционный те
         assertThat(cars).isEmpty();
     }
 
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars?limit={limit}&cursor={cursor}
+     */
+    @Test
+    @DisplayName("Get cars page, limit 3, 3 cars found and next cursor, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetCarsPage_shouldReturnFirstPageAndCursor_whenMoreCarsExist() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars?limit=3"),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(3);
+        assertThat(cars.getFirst().getModel()).isEqualTo("BMW x5");
+        assertThat(response.getHeaders().getFirst("X-Next-Cursor")).isNotBlank();
+    }
+
+    @Test
+    @DisplayName("Get cars page by cursor, 1 car found and no next cursor, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetCarsPage_shouldReturnLastPageWithoutCursor_whenCursorPassed() {
+        ResponseEntity<Car[]> firstPage = restTemplate.getForEntity(
+                url("/api/cars?limit=3"),
+                Car[].class);
+        String cursor = firstPage.getHeaders().getFirst("X-Next-Cursor");
+
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars?limit=3&cursor=" + cursor),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(1);
+        assertThat(cars.getFirst().getModel()).isEqualTo("Ferrari");
+        assertThat(response.getHeaders().containsKey("X-Next-Cursor")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Get cars page with broken cursor, status BadRequest")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetCarsPage_shouldReturnBadRequest_whenCursorIsInvalid() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars?limit=3&cursor=broken"),
+                Car[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars/{id}
+     */
+    @Test
+    @DisplayName("Get car by id after update, updated car found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetCarById_shouldReturnUpdatedCar_whenCarWasChangedAfterRead() {
+        Car car = restTemplate.getForEntity(url("/api/cars?limit=1"), Car[].class).getBody()[0];
+        String carUrl = url("/api/cars/" + car.getId());
+        restTemplate.getForEntity(carUrl, Car.class); // попадает в кэш
+
+        car.setColor("yellow");
+        restTemplate.put(carUrl, car);
+        ResponseEntity<Car> response = restTemplate.getForEntity(carUrl, Car.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertNotNull(response.getBody());
+        assertThat(response.getBody().getColor()).isEqualTo("yellow");
+    }
+
+    @Test
+    @DisplayName("Get car by unknown id, status NotFound")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testGetCarById_shouldReturnNotFound_whenCarDoesNotExist() {
+        ResponseEntity<Car> response = restTemplate.getForEntity(url("/api/cars/1"), Car.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars/search
+     */
+    @Test
+    @DisplayName("Search cars by price range and model prefix, 1 car found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCars_shouldCombineFilters_whenSeveralFiltersPassed() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search?minPrice=10000&maxPrice=30000&modelPrefix=mb"),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(1);
+        assertThat(cars.getFirst().getModel()).isEqualTo("MB A220");
+    }
+
+    @Test
+    @DisplayName("Search cars sorted by price desc with limit 2, 2 cars found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCars_shouldSortAndLimit_whenSortAndLimitPassed() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search?sort=price,desc&limit=2"),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(2);
+        assertThat(cars.getFirst().getModel()).isEqualTo("Ferrari");
+        assertThat(cars.get(1).getModel()).isEqualTo("BMW x5");
+    }
+
+    @Test
+    @DisplayName("Search cars with unknown sort field, status BadRequest")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCars_shouldReturnBadRequest_whenSortFieldIsUnknown() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search?sort=imageUrl"),
+                Car[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars/search/text
+     */
+    @Test
+    @DisplayName("Search cars by model prefix mb, 1 car found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCarsByModel_shouldReturnCar_whenModelStartsWithQuery() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search/text?q=mb"),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(1);
+        assertThat(cars.getFirst().getModel()).isEqualTo("MB A220");
+    }
+
+    @Test
+    @DisplayName("Search cars by model with a typo, Ferrari found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCarsByModel_shouldReturnCar_whenQueryHasTypo() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search/text?q=Ferary"),
+                Car[].class);
+        assertNotNull(response.getBody());
+        List<Car> cars = Arrays.asList(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cars).hasSize(1);
+        assertThat(cars.getFirst().getModel()).isEqualTo("Ferrari");
+    }
+
+    @Test
+    @DisplayName("Search cars by model not similar to any car, status NotFound")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testSearchCarsByModel_shouldReturnNotFound_whenNoModelIsSimilar() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search/text?q=tesla"),
+                Car[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    @DisplayName("Search cars by blank model text, status BadRequest")
+    void testSearchCarsByModel_shouldReturnBadRequest_whenQueryIsBlank() {
+        ResponseEntity<Car[]> response = restTemplate.getForEntity(
+                url("/api/cars/search/text?q= "),
+                Car[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     //-----------------------------------------------------------------------
     /**
      * GET /api/cars/color/{color}
@@ -112,6 +308,27 @@ public class RestApiCarControllerIT { // IT - интеграционный те
         assertThat(cars).isEmpty();
     }
 
+    @Test
+    @DisplayName("Get cars by color with If-None-Match, status NotModified until a car is added")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetCarsByColor_shouldReturnNotModified_whenEtagMatchesAndNoCarAdded() {
+        String colorUrl = url("/api/cars/color/red");
+        String etag = restTemplate.getForEntity(colorUrl, Car[].class).getHeaders().getETag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+
+        ResponseEntity<Car[]> notModified = restTemplate.exchange(
+                colorUrl, HttpMethod.GET, new HttpEntity<>(headers), Car[].class);
+        restTemplate.postForEntity(url("/api/cars"), new Car("green", "Skoda Fabia", 15000), Car.class);
+        ResponseEntity<Car[]> changed = restTemplate.exchange(
+                colorUrl, HttpMethod.GET, new HttpEntity<>(headers), Car[].class);
+
+        assertNotNull(etag);
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
     //-----------------------------------------------------------------------
     /**
      * GET /api/cars/price/between/{min}/{max}
@@ -239,4 +456,381 @@ public class RestApiCarControllerIT { // IT - интеграционный те
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
         assertThat(cars).isEmpty();
     }
+
+    //-----------------------------------------------------------------------
+    /**
+     * POST, DELETE /api/cars/batch
+     */
+    @Test
+    @DisplayName("Create cars from NDJSON, 2 created and 1 failed, status Ok")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testPostCarsBatch_shouldCreateValidCars_whenNdjsonPassed() {
+        String body = """
+                {"color":"blue","model":"Skoda Octavia","price":21000}
+                {"model":"Without color","price":1}
+                {"color":"grey","model":"VW Golf","price":19000}
+                """;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+
+        ResponseEntity<CarBatchResult> response = restTemplate.postForEntity(
+                url("/api/cars/batch"), new HttpEntity<>(body, headers), CarBatchResult.class);
+        assertNotNull(response.getBody());
+        CarBatchResult result = response.getBody();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.created()).isEqualTo(2);
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(result.items().get(1).status()).isEqualTo(CarBatchResult.Status.FAILED);
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Create cars from NDJSON with a broken line, cars before it stored, status MultiStatus")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testPostCarsBatch_shouldReportStoredCars_whenJsonBreaksAfterThem() {
+        String body = """
+                {"color":"blue","model":"Skoda Octavia","price":21000}
+                {"color":"grey","model":
+                """;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+
+        ResponseEntity<CarBatchResult> response = restTemplate.postForEntity(
+                url("/api/cars/batch"), new HttpEntity<>(body, headers), CarBatchResult.class);
+        assertNotNull(response.getBody());
+        CarBatchResult result = response.getBody();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.MULTI_STATUS);
+        assertThat(result.error()).startsWith("Invalid item at index 1");
+        assertThat(result.items()).hasSize(1);
+        assertThat(result.items().getFirst().status()).isEqualTo(CarBatchResult.Status.CREATED);
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Create cars from broken JSON, nothing stored, status BadRequest")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testPostCarsBatch_shouldReturnBadRequest_whenFirstItemIsBroken() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<CarBatchResult> response = restTemplate.postForEntity(
+                url("/api/cars/batch"), new HttpEntity<>("[{\"color\":", headers), CarBatchResult.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Delete cars by JSON array of ids, 1 deleted and 1 not found, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testDeleteCarsBatch_shouldDeleteExistingCars_whenIdsPassed() {
+        Car car = restTemplate.getForEntity(url("/api/cars?limit=1"), Car[].class).getBody()[0];
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<CarBatchResult> response = restTemplate.exchange(url("/api/cars/batch"), HttpMethod.DELETE,
+                new HttpEntity<>("[" + car.getId() + ", -1]", headers), CarBatchResult.class);
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().deleted()).isEqualTo(1);
+        assertThat(response.getBody().notFound()).isEqualTo(1);
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).hasSize(3);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * POST /api/cars/import
+     */
+    @Test
+    @DisplayName("Import cars from CSV, 1 updated, 2 inserted and 1 rejected, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testImportCarsCsv_shouldInsertAndUpdateValidRows_whenCsvPassed() {
+        Car car = restTemplate.getForEntity(url("/api/cars?limit=1"), Car[].class).getBody()[0];
+        String body = "id,color,model,price,year,engine_type\n"
+                + car.getId() + ",red,\"Updated, model\",12345.5,2019,petrol\n"
+                + ",blue,Skoda Octavia,21000,2022,\n"
+                + ",grey,VW Golf,19000,2021,diesel\n"
+                + ",,Without color,1,2020,\n";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("text/csv"));
+
+        ResponseEntity<CarImportResult> response = restTemplate.postForEntity(
+                url("/api/cars/import"), new HttpEntity<>(body, headers), CarImportResult.class);
+        assertNotNull(response.getBody());
+        CarImportResult result = response.getBody();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.rows()).isEqualTo(4);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.inserted()).isEqualTo(2);
+        assertThat(result.rejected()).isEqualTo(1);
+        assertThat(result.rejects().getFirst().row()).isEqualTo(4);
+        assertThat(restTemplate.getForEntity(url("/api/cars/" + car.getId()), Car.class).getBody().getModel())
+                .isEqualTo("Updated, model");
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).hasSize(6);
+    }
+
+    @Test
+    @DisplayName("Import cars from broken NDJSON, nothing imported, status BadRequest")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testImportCarsNdjson_shouldImportNothing_whenJsonIsBroken() {
+        String body = """
+                {"color":"blue","model":"Skoda Octavia","price":21000,"year":2022}
+                {"color":"grey","model":
+                """;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+
+        ResponseEntity<CarImportResult> response = restTemplate.postForEntity(
+                url("/api/cars/import"), new HttpEntity<>(body, headers), CarImportResult.class);
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().error()).isNotNull();
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).isEmpty();
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars/stats
+     */
+    @Test
+    @DisplayName("Get stats after a car is added and deleted, counts follow the changes, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testGetStats_shouldCountCar_whileCarExists() {
+        // Сводка в памяти не видит @Sql, поэтому сравниваем с ней же до изменения
+        CarStats before = restTemplate.getForEntity(url("/api/cars/stats"), CarStats.class).getBody();
+        Car car = new Car("Turquoise", "Lada Niva", 9_999_999);
+        car.setYear(1977);
+        Car created = restTemplate.postForEntity(url("/api/cars"), car, Car.class).getBody();
+
+        ResponseEntity<CarStats> response = restTemplate.getForEntity(url("/api/cars/stats"), CarStats.class);
+        restTemplate.delete(url("/api/cars/" + created.getId()));
+        CarStats after = restTemplate.getForEntity(url("/api/cars/stats"), CarStats.class).getBody();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertNotNull(response.getBody());
+        assertThat(response.getBody().count()).isEqualTo(before.count() + 1);
+        assertThat(response.getBody().maxPrice()).isEqualTo(9_999_999.0);
+        assertThat(response.getBody().colors()).containsEntry("turquoise", 1L);
+        assertThat(response.getBody().years()).containsEntry(1977, 1L);
+        assertThat(after).isEqualTo(before);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /api/cars/export
+     */
+    @Test
+    @DisplayName("Export cars as CSV, header and 4 rows, status Ok")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testExportCarsCsv_shouldReturnAllRows_whenDatabaseIsNotEmpty() {
+        ResponseEntity<String> response = restTemplate.getForEntity(url("/api/cars/export"), String.class);
+        assertNotNull(response.getBody());
+        List<String> lines = response.getBody().lines().toList();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.parseMediaType("text/csv"))).isTrue();
+        assertThat(lines).hasSize(5);
+        assertThat(lines.getFirst()).startsWith("id,color,model,price,year,engine_type");
+        assertThat(lines.get(1)).contains("BMW x5");
+    }
+
+    @Test
+    @DisplayName("Export cars in unknown format, status BadRequest")
+    void testExportCars_shouldReturnBadRequest_whenFormatIsUnknown() {
+        ResponseEntity<String> response = restTemplate.getForEntity(url("/api/cars/export?format=xml"), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * PUT /api/cars/{id}
+     */
+    @Test
+    @DisplayName("Put car with outdated If-Match, car not changed, status PreconditionFailed")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testPutCar_shouldReturnPreconditionFailed_whenIfMatchIsOutdated() {
+        Car car = restTemplate.getForEntity(url("/api/cars?limit=1"), Car[].class).getBody()[0];
+        String carUrl = url("/api/cars/" + car.getId());
+        String etag = restTemplate.getForEntity(carUrl, Car.class).getHeaders().getETag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(etag);
+
+        car.setColor("yellow");
+        ResponseEntity<Car> first = restTemplate.exchange(carUrl, HttpMethod.PUT, new HttpEntity<>(car, headers), Car.class);
+        car.setColor("purple");
+        ResponseEntity<Car> second = restTemplate.exchange(carUrl, HttpMethod.PUT, new HttpEntity<>(car, headers), Car.class);
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(first.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(second.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        assertThat(restTemplate.getForEntity(carUrl, Car.class).getBody().getColor()).isEqualTo("yellow");
+    }
+
+    @Test
+    @DisplayName("Put car with unknown id, new car created, status Created")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testPutCar_shouldCreateCar_whenIdDoesNotExist() {
+        Car car = new Car("blue", "Skoda Octavia", 21000);
+        car.setYear(2022);
+
+        ResponseEntity<Car> response = restTemplate.exchange(url("/api/cars/1"), HttpMethod.PUT,
+                new HttpEntity<>(car), Car.class);
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(response.getHeaders().getLocation()).hasPath("/api/cars/" + response.getBody().getId());
+        assertThat(restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody()).hasSize(1);
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * Сжатие gzip ответов /api (GzipResponseFilter)
+     */
+    @Test
+    @DisplayName("Get many cars accepting gzip, body compressed as it streams and ETag with -gzip, status Ok")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testGetCars_shouldCompressBody_whenGzipAcceptedAndBodyIsLarge() throws IOException {
+        createCars(30);
+
+        ResponseEntity<byte[]> response = getBytes("/api/cars", gzipHeaders());
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeaders().getETag()).endsWith("-gzip\"");
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        // Потоковый путь: длина заранее неизвестна
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(-1);
+        assertThat(gunzip(response.getBody())).startsWith("[").contains("Compression test car 29");
+    }
+
+    @Test
+    @DisplayName("Get many cars with gzip ETag in If-None-Match, suffix stripped before comparison, status NotModified")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testGetCars_shouldReturnNotModified_whenIfNoneMatchHasGzipEtag() {
+        createCars(30);
+        String etag = getBytes("/api/cars", gzipHeaders()).getHeaders().getETag();
+        HttpHeaders headers = gzipHeaders();
+        headers.setIfNoneMatch(etag);
+
+        ResponseEntity<byte[]> response = getBytes("/api/cars", headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(etag);
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    @Test
+    @DisplayName("Get one car accepting gzip, body below threshold sent as is with Content-Length, status Ok")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testGetCarById_shouldNotCompress_whenBodyIsBelowThreshold() {
+        Car created = createCar("Compression test car");
+
+        ResponseEntity<byte[]> response = getBytes("/api/cars/" + created.getId(), gzipHeaders());
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"" + created.getVersion() + "\"");
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(response.getBody().length);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).contains("Compression test car");
+    }
+
+    @Test
+    @DisplayName("Get many cars without Accept-Encoding, body not compressed but Vary set, status Ok")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testGetCars_shouldVaryByAcceptEncoding_whenGzipNotAccepted() {
+        createCars(30);
+
+        ResponseEntity<byte[]> response = getBytes("/api/cars", new HttpHeaders());
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(response.getHeaders().getETag()).doesNotEndWith("-gzip\"");
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).contains("Compression test car 29");
+    }
+
+    @Test
+    @DisplayName("Put car with gzip ETag in If-Match, suffix stripped before comparison, status Ok")
+    @Sql(scripts = "classpath:sql/clear.sql")
+    void testPutCar_shouldAcceptIfMatch_whenEtagHasGzipSuffix() {
+        Car car = createCar("Compression test car");
+        String etag = "\"" + car.getVersion() + "-gzip\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(etag);
+
+        car.setColor("yellow");
+        ResponseEntity<Car> response = restTemplate.exchange(url("/api/cars/" + car.getId()), HttpMethod.PUT,
+                new HttpEntity<>(car, headers), Car.class);
+        assertNotNull(response.getBody());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getColor()).isEqualTo("yellow");
+    }
+
+    private Car createCar(String model) {
+        Car car = new Car("black", model, 25000);
+        car.setYear(2020);
+        return restTemplate.postForEntity(url("/api/cars"), car, Car.class).getBody();
+    }
+
+    // Каждая машина в JSON около 200 байт: 30 машин - больше порога сжатия 2 КБ
+    private void createCars(int count) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append("{\"color\":\"black\",\"model\":\"Compression test car ").append(i)
+                    .append("\",\"price\":25000,\"year\":2020}\n");
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        ResponseEntity<CarBatchResult> response = restTemplate.postForEntity(
+                url("/api/cars/batch"), new HttpEntity<>(body.toString(), headers), CarBatchResult.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    private ResponseEntity<byte[]> getBytes(String path, HttpHeaders headers) {
+        return restTemplate.exchange(url(path), HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    private static HttpHeaders gzipHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        return headers;
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    //-----------------------------------------------------------------------
+    /**
+     * GET /actuator/prometheus
+     */
+    @Test
+    @DisplayName("Scrape metrics after a missing car, latency histogram and 404 counter exported")
+    @Sql(scripts = {"classpath:sql/clear.sql", "classpath:sql/seed_cars.sql"})
+    void testPrometheus_shouldExportApiMetrics_afterRequests() {
+        restTemplate.getForEntity(url("/api/cars/color/black"), String.class);
+        restTemplate.getForEntity(url("/api/cars/999999"), String.class);
+
+        ResponseEntity<String> response = restTemplate.getForEntity(url("/actuator/prometheus"), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .contains("http_server_requests_seconds_bucket{")
+                .contains("api_not_found_total{method=\"GET\",uri=\"/api/cars/{id:\\\\d+}\"}")
+                .contains("spring_data_repository_invocations_seconds_bucket{")
+                .contains("spring_data_repository_results_rows_count{method=\"findCarByColorIgnoreCase\"");
+    }
 }
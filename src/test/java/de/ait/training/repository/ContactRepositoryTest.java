@@ -0,0 +1,58 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Contact;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выборка контактов для рассылки на H2 в режиме PostgreSQL со схемой из Liquibase
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:contacts;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ContactRepositoryTest {
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @BeforeEach
+    void createContacts() {
+        contactRepository.deleteAll();
+        contactRepository.save(contact("first@example.com"));
+        contactRepository.save(contact("second@EXAMPLE.com"));
+        contactRepository.save(contact("third@examplexcom"));
+        contactRepository.save(contact("fourth@other.org"));
+    }
+
+    @Test
+    @DisplayName("Email domain given, only contacts of this domain found, case ignored")
+    void testFindSubscribed_shouldReturnDomainContacts_whenDomainPassed() {
+        assertThat(contactRepository.findSubscribed(0L, "example.com", Limit.of(10)))
+                .extracting(Contact::getEmail)
+                .containsExactly("first@example.com", "second@EXAMPLE.com");
+    }
+
+    @Test
+    @DisplayName("Email domain with % or _, matched literally and not as a pattern")
+    void testFindSubscribed_shouldMatchLiterally_whenDomainHasWildcards() {
+        assertThat(contactRepository.findSubscribed(0L, "%", Limit.of(10))).isEmpty();
+        assertThat(contactRepository.findSubscribed(0L, "example_com", Limit.of(10))).isEmpty();
+    }
+
+    private static Contact contact(String email) {
+        Contact contact = new Contact();
+        contact.setEmail(email);
+        contact.setName("Client");
+        return contact;
+    }
+}
@@ -0,0 +1,189 @@
+package de.ait.training.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignRequest.CampaignRecipient;
+import de.ait.training.dto.CampaignRequest.ContactQuery;
+import de.ait.training.dto.CampaignStatus;
+import de.ait.training.model.Contact;
+import de.ait.training.repository.ContactRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class CampaignServiceTest { // локальный SMTP-сервер GreenMail, шаблон - сама строка (StringTemplateResolver по умолчанию)
+    private static final String TEMPLATE = "<p>Hello, <span th:text=\"${userName}\">Client</span></p>";
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ContactRepository contactRepository = mock(ContactRepository.class);
+    private final List<CampaignService> services = new ArrayList<>();
+    private EmailDispatcher dispatcher;
+    private EmailService emailService;
+
+    @BeforeEach
+    void startDispatcher() {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+        dispatcher = new EmailDispatcher(mailSender, meterRegistry, 100, 2, 10, 1, Duration.ofMillis(10), false);
+        dispatcher.start();
+
+        emailService = new EmailService(mailSender, new SpringTemplateEngine(), dispatcher, meterRegistry);
+        ReflectionTestUtils.setField(emailService, "fromAddress", "service@example.com");
+        ReflectionTestUtils.setField(emailService, "fromName", "Car service");
+    }
+
+    @AfterEach
+    void stop() {
+        services.forEach(CampaignService::stop);
+        dispatcher.stop();
+    }
+
+    @Test
+    @DisplayName("5 contacts in chunks of 2, contacts read by keyset and all emails personalized")
+    void testStartCampaign_shouldReadContactsInChunks_whenContactsRequested() throws Exception {
+        given(contactRepository.findSubscribed(0L, null, Limit.of(2))).willReturn(contacts(1, 2));
+        given(contactRepository.findSubscribed(2L, null, Limit.of(2))).willReturn(contacts(3, 4));
+        given(contactRepository.findSubscribed(4L, null, Limit.of(2))).willReturn(contacts(5));
+        CampaignService campaignService = campaignService(1000, 2, 10);
+
+        CampaignStatus status = awaitFinished(campaignService,
+                campaignService.startCampaign(request(null, new ContactQuery(null))).id());
+
+        assertThat(status.state()).isEqualTo(CampaignStatus.State.COMPLETED);
+        assertThat(status.total()).isEqualTo(5);
+        assertThat(status.sent()).isEqualTo(5);
+        assertThat(greenMail.getReceivedMessages()).hasSize(5);
+        assertThat(bodies()).anyMatch(body -> body.contains("<span>Name 3</span>"));
+        verify(contactRepository).findSubscribed(4L, null, Limit.of(2));
+        // Последняя порция неполная, поэтому следующая не запрашивается
+        verify(contactRepository, never()).findSubscribed(eq(5L), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("10 recipients at 20 emails per second, campaign takes at least 450 ms")
+    void testStartCampaign_shouldLimitRate_whenManyRecipients() throws Exception {
+        CampaignService campaignService = campaignService(20, 3, 10);
+        List<CampaignRecipient> recipients = IntStream.range(0, 10)
+                .mapToObj(i -> new CampaignRecipient("client" + i + "@example.com", Map.of("userName", "Client " + i)))
+                .toList();
+
+        long start = System.nanoTime();
+        CampaignStatus status = awaitFinished(campaignService,
+                campaignService.startCampaign(request(recipients, null)).id());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(status.sent()).isEqualTo(10);
+        // Первое письмо сразу, остальные 9 - через 50 мс каждое
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(450);
+    }
+
+    @Test
+    @DisplayName("Invalid address, counted as failed, campaign completes with status")
+    void testGetCampaign_shouldReportSentAndFailed_whenOneAddressIsInvalid() throws Exception {
+        CampaignService campaignService = campaignService(1000, 10, 10);
+        List<CampaignRecipient> recipients = List.of(
+                new CampaignRecipient("first@example.com", Map.of("userName", "First")),
+                new CampaignRecipient("broken<@example.com", Map.of("userName", "Broken")),
+                new CampaignRecipient("second@example.com", Map.of("userName", "Second")));
+
+        CampaignStatus status = awaitFinished(campaignService,
+                campaignService.startCampaign(request(recipients, null)).id());
+
+        assertThat(status.state()).isEqualTo(CampaignStatus.State.COMPLETED);
+        assertThat(status.total()).isEqualTo(3);
+        assertThat(status.sent()).isEqualTo(2);
+        assertThat(status.failed()).isEqualTo(1);
+        assertThat(status.finishedAt()).isNotNull();
+        assertThat(campaignService.getCampaign("unknown")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Runner busy and queue full, next campaign rejected")
+    void testStartCampaign_shouldReject_whenQueueIsFull() {
+        // 1 письмо в секунду: первая рассылка занимает единственный поток на несколько секунд
+        CampaignService campaignService = campaignService(1, 1, 1);
+        List<CampaignRecipient> recipients = IntStream.range(0, 5)
+                .mapToObj(i -> new CampaignRecipient("client" + i + "@example.com", Map.of()))
+                .toList();
+
+        campaignService.startCampaign(request(recipients, null));
+        campaignService.startCampaign(request(recipients, null));
+
+        assertThatThrownBy(() -> campaignService.startCampaign(request(recipients, null)))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private CampaignService campaignService(double ratePerSecond, int chunkSize, int queueCapacity) {
+        CampaignService campaignService = new CampaignService(emailService, contactRepository, ratePerSecond,
+                chunkSize, 1, 100, queueCapacity, Duration.ofMillis(10), false);
+        services.add(campaignService);
+        return campaignService;
+    }
+
+    private static CampaignRequest request(List<CampaignRecipient> recipients, ContactQuery contacts) {
+        return new CampaignRequest("Car service time", TEMPLATE, Map.of(), recipients, contacts);
+    }
+
+    private static List<Contact> contacts(int... ids) {
+        List<Contact> contacts = new ArrayList<>();
+        for (int id : ids) {
+            Contact contact = new Contact();
+            contact.setId((long) id);
+            contact.setEmail("contact" + id + "@example.com");
+            contact.setName("Name " + id);
+            contacts.add(contact);
+        }
+        return contacts;
+    }
+
+    private static CampaignStatus awaitFinished(CampaignService campaignService, String id) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            CampaignStatus status = campaignService.getCampaign(id).orElseThrow();
+            if (status.finishedAt() != null) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Campaign " + id + " not finished in 10 s");
+    }
+
+    private static List<String> bodies() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        for (MimeMessage message : greenMail.getReceivedMessages()) {
+            bodies.add(GreenMailUtil.getBody(message));
+        }
+        return bodies;
+    }
+}
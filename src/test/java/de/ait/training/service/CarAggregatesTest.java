@@ -0,0 +1,92 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сводка CarAggregates против пересборки на H2 в режиме PostgreSQL со схемой из Liquibase.
+ * Событие после коммита (@TransactionalEventListener) вызывается вручную в afterCommit, как это делает Spring
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:aggregates;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // каждая транзакция коммитится, как в приложении
+class CarAggregatesTest {
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private CarTableVersion carTableVersion;
+    private CarAggregates carAggregates;
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void createAggregates() {
+        carRepository.deleteAll();
+        carTableVersion = new CarTableVersion(dataSource, transactionManager);
+        carAggregates = new CarAggregates(carRepository, carTableVersion, transactionManager, 10000);
+        transaction = new TransactionTemplate(transactionManager);
+        carAggregates.rebuild();
+    }
+
+    @Test
+    @DisplayName("Car created after rebuild, counted once by its event")
+    void testOnCarChanged_shouldCountCar_whenCommittedAfterRebuild() {
+        createCar(() -> {
+        });
+
+        assertThat(carAggregates.getStats().count()).isEqualTo(1);
+        assertThat(carAggregates.getStats().colors()).containsEntry("black", 1L);
+    }
+
+    @Test
+    @DisplayName("Rebuild reads a committed car before its event arrives, car counted once")
+    void testOnCarChanged_shouldIgnoreEvent_whenRebuildAlreadyReadIt() {
+        // Пересборка по расписанию в другом потоке успевает между коммитом и доставкой события
+        createCar(() -> CompletableFuture.runAsync(carAggregates::rebuild).join());
+
+        assertThat(carAggregates.getStats().count()).isEqualTo(1);
+        assertThat(carAggregates.getStats().colors()).containsEntry("black", 1L);
+    }
+
+    private void createCar(Runnable beforeEvent) {
+        transaction.executeWithoutResult(status -> {
+            Car car = new Car("black", "BMW x5", 25000);
+            car.setYear(2020);
+            CarChangedEvent event = new CarChangedEvent(null, carRepository.save(car).copy());
+            carTableVersion.onCarChanged(event);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    beforeEvent.run();
+                    carAggregates.onCarChanged(event);
+                }
+            });
+        });
+    }
+}
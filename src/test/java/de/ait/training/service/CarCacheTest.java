@@ -0,0 +1,79 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarView;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CarCacheTest {
+    private final CarCache carCache = new CarCache(new SimpleMeterRegistry(), 100, 100, Duration.ofMinutes(10));
+
+    @Test
+    @DisplayName("Car changed while price range was loading, stale range not kept")
+    void testGetByPrice_shouldReload_whenCarChangedDuringLoad() {
+        Car car = car(1L, "red", 20000);
+        AtomicInteger loads = new AtomicInteger();
+
+        // Изменение коммитится, пока первая загрузка читает базу
+        carCache.getByPrice(10000.0, 30000.0, () -> {
+            loads.incrementAndGet();
+            carCache.onCarChanged(new CarChangedEvent(null, car));
+            return List.of();
+        });
+        List<CarView> cars = carCache.getByPrice(10000.0, 30000.0, () -> {
+            loads.incrementAndGet();
+            return List.of(view(car));
+        });
+
+        assertThat(loads).hasValue(2);
+        assertThat(cars).containsExactly(view(car));
+    }
+
+    @Test
+    @DisplayName("Car loaded without changes, second lookup served from cache")
+    void testGetById_shouldLoadOnce_whenNothingChanged() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            carCache.getById(1L, id -> {
+                loads.incrementAndGet();
+                return Optional.of(car(id, "red", 20000));
+            });
+        }
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Caller changes the returned car, cached car stays the same")
+    void testGetById_shouldReturnCopy_whenCallerChangesCar() {
+        Car first = carCache.getById(1L, id -> Optional.of(car(id, "red", 20000))).orElseThrow();
+        first.setColor("yellow");
+
+        Car second = carCache.getById(1L, id -> Optional.empty()).orElseThrow();
+
+        assertThat(second.getColor()).isEqualTo("red");
+        assertThat(second).isNotSameAs(first);
+    }
+
+    private static Car car(long id, String color, double price) {
+        Car car = new Car(color, "BMW x5", price);
+        car.setId(id);
+        car.setVersion(0L);
+        return car;
+    }
+
+    private static CarView view(Car car) {
+        return new CarView(car.getId(), car.getColor(), car.getModel(), car.getPrice(), car.getYear(),
+                car.getEngineType(), car.getImageUrl(), car.getThumbnailUrl(), car.getMediumUrl(), car.getVersion());
+    }
+}
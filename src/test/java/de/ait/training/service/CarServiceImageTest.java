@@ -0,0 +1,175 @@
+package de.ait.training.service;
+
+import de.ait.training.model.Car;
+import de.ait.training.model.ImageBlob;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.ImageBlobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Учет ссылок на картинки (image_blobs), дедупликация файлов и сборка мусора
+ * на H2 в режиме PostgreSQL со схемой из Liquibase, картинки - во временной папке
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:images;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;NON_KEYWORDS=YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // каждый вызов сервиса коммитится, как в приложении
+class CarServiceImageTest {
+    private static final byte[] RED_PNG = png("red");
+    private static final byte[] BLUE_PNG = png("blue");
+
+    @TempDir
+    Path uploadDir;
+
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ImageStorage imageStorage;
+    private CarServiceImpl carService;
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void createService() {
+        carRepository.deleteAll();
+        imageBlobRepository.deleteAll();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        imageStorage = new ImageStorage(uploadDir.toString(), DataSize.ofMegabytes(1));
+        carService = new CarServiceImpl(carRepository, imageStorage, imageBlobRepository,
+                mock(ImageVariantService.class), "http://localhost:8080/", 500,
+                new CarCache(meterRegistry, 100, 100, Duration.ofMinutes(10)), mock(CarAggregates.class),
+                event -> {
+                }, transactionManager, meterRegistry);
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    @DisplayName("Same image uploaded to two cars, one file on disk with 2 references")
+    void testAttachImage_shouldStoreFileOnce_whenSameImageUploadedTwice() throws Exception {
+        Car first = createCar("BMW x5");
+        Car second = createCar("Audi A4");
+
+        attachImage(first, RED_PNG);
+        attachImage(second, RED_PNG);
+
+        String fileName = fileName(first);
+        assertThat(fileName(second)).isEqualTo(fileName);
+        assertThat(storedFiles()).containsExactly(fileName);
+        assertThat(blob(fileName).getRefCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Car gets another image, old image released and new one referenced")
+    void testAttachImage_shouldReleaseOldImage_whenImageReplaced() throws Exception {
+        Car car = createCar("BMW x5");
+        attachImage(car, RED_PNG);
+        String oldFileName = fileName(car);
+
+        attachImage(car, BLUE_PNG);
+
+        String newFileName = fileName(car);
+        assertThat(newFileName).isNotEqualTo(oldFileName);
+        assertThat(blob(oldFileName).getRefCount()).isZero();
+        assertThat(blob(newFileName).getRefCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Car deleted, GC removes its image but keeps the image still used by another car")
+    void testCollect_shouldDeleteOnlyUnreferencedImages_whenCarDeleted() throws Exception {
+        Car deleted = createCar("BMW x5");
+        Car kept = createCar("Audi A4");
+        attachImage(deleted, RED_PNG);
+        attachImage(kept, BLUE_PNG);
+        String deletedFileName = fileName(deleted);
+        String keptFileName = fileName(kept);
+
+        transaction.executeWithoutResult(status -> carService.deleteCar(deleted.getId()));
+        assertThat(blob(deletedFileName).getRefCount()).isZero();
+        collectGarbage();
+
+        assertThat(storedFiles()).containsExactly(keptFileName);
+        assertThat(imageBlobRepository.findAll()).extracting(ImageBlob::getFileName).containsExactly(keptFileName);
+    }
+
+    @Test
+    @DisplayName("File without image_blobs row (rolled back upload), GC removes it with its variants")
+    void testCollect_shouldDeleteOrphanFiles_whenNoBlobRow() throws Exception {
+        String hash = "a".repeat(64);
+        Files.write(uploadDir.resolve(hash + ".png"), RED_PNG);
+        Files.write(uploadDir.resolve(hash + "-thumb.jpg"), RED_PNG);
+
+        collectGarbage();
+
+        assertThat(storedFiles()).isEmpty();
+    }
+
+    private Car createCar(String model) {
+        Car car = new Car("black", model, 25000);
+        car.setYear(2020);
+        return carRepository.save(car);
+    }
+
+    private void attachImage(Car car, byte[] image) {
+        MockMultipartFile file = new MockMultipartFile("file", "car.png", "image/png", image);
+        transaction.executeWithoutResult(status -> carService.attachImage(car.getId(), file));
+    }
+
+    private void collectGarbage() throws InterruptedException {
+        // Без срока ожидания: удаляется все, что изменено раньше начала сборки
+        Thread.sleep(20);
+        new ImageGarbageCollector(imageBlobRepository, imageStorage, transactionManager, Duration.ZERO, 100).collect();
+    }
+
+    private String fileName(Car car) {
+        String imageUrl = carRepository.findById(car.getId()).orElseThrow().getImageUrl();
+        return imageUrl.substring("http://localhost:8080/".length());
+    }
+
+    private ImageBlob blob(String fileName) {
+        return imageBlobRepository.findAll().stream()
+                .filter(blob -> blob.getFileName().equals(fileName))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private List<String> storedFiles() throws Exception {
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            return files.map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    private static byte[] png(String content) {
+        return ("\u0089PNG\r\n\u001a\n" + content).getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,103 @@
+package de.ait.training.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailDispatcherTest { // локальный SMTP-сервер GreenMail вместо настоящего
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailDispatcher dispatcher;
+
+    @AfterEach
+    void stopDispatcher() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("50 queued emails, all delivered through the fake SMTP server")
+    void testSubmit_shouldDeliverAllEmails_whenServerIsUp() throws Exception {
+        JavaMailSenderImpl mailSender = mailSender(ServerSetupTest.SMTP.getPort());
+        dispatcher = new EmailDispatcher(mailSender, meterRegistry, 100, 2, 10, 3, Duration.ofMillis(10), false);
+        dispatcher.start();
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(dispatcher.submit(message(mailSender, "client" + i + "@example.com")));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(50);
+        assertThat(meterRegistry.counter("mail.sent").count()).isEqualTo(50);
+        assertThat(meterRegistry.counter("mail.failed").count()).isZero();
+        assertThat(meterRegistry.get("mail.queue.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("SMTP server is down, email retried with backoff and then failed")
+    void testSubmit_shouldRetryAndFail_whenServerIsDown() throws Exception {
+        JavaMailSenderImpl mailSender = mailSender(ServerSetupTest.SMTP.getPort() + 1000);
+        dispatcher = new EmailDispatcher(mailSender, meterRegistry, 100, 1, 10, 3, Duration.ofMillis(10), false);
+        dispatcher.start();
+
+        CompletableFuture<Void> result = dispatcher.submit(message(mailSender, "client@example.com"));
+
+        assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(Exception.class);
+        assertThat(meterRegistry.counter("mail.retried").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("mail.failed").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.sent").count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Queue is full, new email rejected")
+    void testSubmit_shouldReject_whenQueueIsFull() throws Exception {
+        JavaMailSenderImpl mailSender = mailSender(ServerSetupTest.SMTP.getPort());
+        // воркеры не запущены, поэтому очередь не разбирается
+        dispatcher = new EmailDispatcher(mailSender, meterRegistry, 1, 1, 10, 3, Duration.ofMillis(10), false);
+
+        dispatcher.submit(message(mailSender, "first@example.com"));
+
+        assertThatThrownBy(() -> dispatcher.submit(message(mailSender, "second@example.com")))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(dispatcher.queueDepth()).isEqualTo(1);
+    }
+
+    private JavaMailSenderImpl mailSender(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+        return mailSender;
+    }
+
+    private MimeMessage message(JavaMailSenderImpl mailSender, String to) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message);
+        helper.setFrom("service@example.com");
+        helper.setTo(to);
+        helper.setSubject("Car service time");
+        helper.setText("<p>Hello</p>", true);
+        return message;
+    }
+}
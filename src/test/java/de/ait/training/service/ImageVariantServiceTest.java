@@ -0,0 +1,98 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willDoNothing;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class ImageVariantServiceTest { // картинка - во временной папке, база и транзакции - моки
+    private static final String HOST_URL = "http://localhost:8080/";
+    private static final String FILE_NAME = "car.png";
+
+    @TempDir
+    Path uploadDir;
+
+    private final CarRepository carRepository = mock(CarRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    // Каждое чтение отдает новую сущность, как новая транзакция JPA
+    private final List<Car> loadedCars = new CopyOnWriteArrayList<>();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private ImageVariantService imageVariantService;
+
+    @BeforeEach
+    void createService() throws Exception {
+        ImageIO.write(new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB), "png",
+                uploadDir.resolve(FILE_NAME).toFile());
+        given(transactionManager.getTransaction(any())).willAnswer(invocation -> new SimpleTransactionStatus());
+        given(carRepository.findById(1L)).willAnswer(invocation -> {
+            Car car = new Car("black", "BMW x5", 25000);
+            car.setId(1L);
+            car.setImageUrl(HOST_URL + FILE_NAME);
+            loadedCars.add(car);
+            return Optional.of(car);
+        });
+        imageVariantService = new ImageVariantService(new ImageStorage(uploadDir.toString(), DataSize.ofMegabytes(1)),
+                carRepository, transactionManager, events::add, HOST_URL, 1, 10, false);
+    }
+
+    @AfterEach
+    void stop() {
+        imageVariantService.stop();
+    }
+
+    @Test
+    @DisplayName("Car changed by PUT while variant URLs saved, saved again on fresh car")
+    void testGenerateVariants_shouldRetry_whenOptimisticLockFails() {
+        willThrow(new ObjectOptimisticLockingFailureException(Car.class, 1L))
+                .willDoNothing()
+                .given(transactionManager).commit(any());
+
+        imageVariantService.generateVariants(1L, FILE_NAME);
+
+        verify(transactionManager, timeout(5000).times(2)).commit(any());
+        assertThat(loadedCars).hasSize(2);
+        assertThat(loadedCars.get(1).getThumbnailUrl()).isEqualTo(HOST_URL + "car-thumb.jpg");
+        assertThat(loadedCars.get(1).getMediumUrl()).isEqualTo(HOST_URL + "car-medium.jpg");
+        assertThat(events).hasSize(2).allMatch(CarChangedEvent.class::isInstance);
+    }
+
+    @Test
+    @DisplayName("Car keeps changing, gives up after second attempt and worker stays alive")
+    void testGenerateVariants_shouldGiveUp_whenOptimisticLockFailsTwice() {
+        willThrow(new ObjectOptimisticLockingFailureException(Car.class, 1L)).given(transactionManager).commit(any());
+
+        imageVariantService.generateVariants(1L, FILE_NAME);
+
+        verify(transactionManager, after(500).times(2)).commit(any());
+
+        // Ошибка не убила воркер: следующая задача выполняется
+        willDoNothing().given(transactionManager).commit(any());
+        imageVariantService.generateVariants(1L, FILE_NAME);
+        verify(transactionManager, timeout(5000).times(3)).commit(any());
+    }
+}
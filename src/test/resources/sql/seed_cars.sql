@@ -1,6 +1,6 @@
-INSERT INTO CARS (color, model, price)
+INSERT INTO CARS (color, model, price, year)
 VALUES
-    ('black', 'BMW x5', 25000),
-    ('green', 'Audi A4', 15000),
-    ('white', 'MB A220', 18000),
-    ('red', 'Ferrari', 250000);
\ No newline at end of file
+    ('black', 'BMW x5', 25000, 2020),
+    ('green', 'Audi A4', 15000, 2018),
+    ('white', 'MB A220', 18000, 2021),
+    ('red', 'Ferrari', 250000, 2023);